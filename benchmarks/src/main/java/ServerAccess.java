@@ -0,0 +1,171 @@
+import CenterServer.StudentInfo;
+import CenterServer.TeacherInfo;
+import Record.RecordIdAllocator;
+import Record.Records;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/*
+ * bench.Server over the real server classes; see there.
+ */
+public class ServerAccess implements bench.Server {
+
+    static {
+        // benchmark centers keep their records in memory
+        System.setProperty("dcms.data.dir", "");
+    }
+
+    public Center startCenter(int size, int udpPort) throws Exception {
+        return start(newCenter(udpPort), size, udpPort);
+    }
+
+    public Center startJournaledCenter(File dataDir, String fsync, int udpPort) throws Exception {
+        CenterSystem center;
+        synchronized (ServerAccess.class) {
+            System.setProperty("dcms.data.dir", dataDir.getPath());
+            System.setProperty("dcms.wal.fsync", fsync);
+            try {
+                center = newCenter(udpPort);
+            } finally {
+                System.setProperty("dcms.data.dir", "");
+                System.clearProperty("dcms.wal.fsync");
+            }
+        }
+        return start(center, 0, udpPort);
+    }
+
+    private static CenterSystem newCenter(int udpPort) {
+        CenterSystem center = new CenterSystem("MTL", udpPort,
+                Collections.singletonMap("MTL", InetSocketAddress.createUnresolved("localhost", udpPort)));
+        // there is no ORB to stop
+        center.setShutdownAction(() -> { });
+        return center;
+    }
+
+    private static Center start(CenterSystem center, int size, int udpPort) throws Exception {
+        String[] recordIDs = preload(center, size);
+        InetSocketAddress address = new InetSocketAddress("localhost", udpPort);
+        awaitUdp(address);
+        return new Center() {
+            public String createTRecord(String lastName) {
+                return center.createTRecord("MTL0001", "first", lastName, "address", "5140000000", "french", "MTL");
+            }
+
+            public String createSRecord(String lastName) {
+                return center.createSRecord("MTL0001", "first", lastName, new String[]{"math", "french"}, "active",
+                        "2018-01-01");
+            }
+
+            public String[] createSRecords(String[] lastNames) {
+                StudentInfo[] students = new StudentInfo[lastNames.length];
+                for (int i = 0; i < students.length; i++) {
+                    students[i] = new StudentInfo("first", lastNames[i], new String[]{"math", "french"}, "active",
+                            "2018-01-01");
+                }
+                return center.createSRecords("MTL0001", students);
+            }
+
+            public String editRecord(String recordID, String fieldName, String newValue) throws Exception {
+                return center.editRecord("MTL0001", recordID, fieldName, newValue);
+            }
+
+            public int getLocalRecordCount() {
+                return center.getLocalRecordCount();
+            }
+
+            public int udpCount() throws Exception {
+                try {
+                    return UDPClient.shared().count(address, UDPMessage.ALL, 1000).get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("No reply from " + center.getCenterName(), e.getCause());
+                }
+            }
+
+            public String recordID(int index) {
+                return recordIDs[index];
+            }
+
+            public void shutdown() {
+                center.shutdown();
+            }
+        };
+    }
+
+    /*
+     * Fills the store with size teachers in batches like an import would, and returns their IDs.
+     */
+    private static String[] preload(CenterSystem center, int size) {
+        String[] recordIDs = new String[size];
+        int batch = 1000;
+        for (int done = 0; done < size; done += batch) {
+            TeacherInfo[] teachers = new TeacherInfo[Math.min(batch, size - done)];
+            for (int i = 0; i < teachers.length; i++) {
+                teachers[i] = new TeacherInfo("first", "last" + (done + i), "address", "5140000000", "french", "MTL");
+            }
+            String[] created = center.createTRecords("MTL0001", teachers);
+            System.arraycopy(created, 0, recordIDs, done, created.length);
+        }
+        return recordIDs;
+    }
+
+    /*
+     * The UDP server starts on its own thread; waits until it answers.
+     */
+    private static void awaitUdp(InetSocketAddress address) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                UDPClient.shared().count(address, UDPMessage.ALL, 100).get();
+                return;
+            } catch (ExecutionException e) {
+                if (attempt == 50) throw e;
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    public IdAllocator idAllocator() {
+        return new RecordIdAllocator()::nextTeacherId;
+    }
+
+    public Store newStore() {
+        RecordStore store = new RecordStore();
+        return new Store() {
+            public boolean add(Records record) {
+                return store.add(record);
+            }
+
+            public Records get(String recordID) {
+                return store.get(recordID);
+            }
+        };
+    }
+
+    public void log(String managerId, String operation, String result) {
+        Log.log(Log.getCurrentTime(), managerId, operation, result);
+    }
+
+    public void writeSnapshot(File file, Collection<Records> records) throws IOException {
+        SnapshotFile.write(file, 1, records);
+    }
+
+    public void readSnapshot(File file, Consumer<Records> consumer) throws IOException {
+        SnapshotFile.read(file, consumer);
+    }
+
+    public void countRequest(ByteBuffer buffer, long requestId) {
+        UDPMessage.header(buffer, UDPMessage.COUNT, (byte) 0, 0, 1, requestId, 0);
+        buffer.put(UDPMessage.ALL);
+        buffer.flip();
+    }
+
+    public int countReply(ByteBuffer frame) {
+        return UDPMessage.payload(frame).getInt();
+    }
+}
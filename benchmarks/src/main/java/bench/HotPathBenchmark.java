@@ -0,0 +1,119 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Throughput of the server hot paths, run in-process without CORBA: the CenterSystem operations on a center
+ * preloaded with size records, ID allocation, Log.log and a UDP COUNT round trip through UDPClient to the
+ * center's UDPServer.
+ *
+ *   java -jar benchmarks/target/benchmarks.jar HotPathBenchmark -p size=1000,100000 -t 4
+ *
+ * Thread counts are JMH's -t (default 1); every thread shares the one center of the trial. Each trial starts
+ * a fresh center, so records created by createTRecord don't carry over into the other benchmarks.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotPathBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class CenterState {
+        @Param({"1000", "100000"})
+        int size;
+
+        Server.Center center;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            center = Server.load().startCenter(size, freeUdpPort());
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            center.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class IdState {
+        Server.IdAllocator allocator;
+
+        @Setup(Level.Trial)
+        public void start() {
+            allocator = Server.load().idAllocator();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class LogState {
+        Server server;
+
+        @Setup(Level.Trial)
+        public void start() {
+            server = Server.load();
+        }
+    }
+
+    @Benchmark
+    public String createTRecord(CenterState state) {
+        return state.center.createTRecord("last" + ThreadLocalRandom.current().nextInt(1000));
+    }
+
+    @Benchmark
+    public String createSRecord(CenterState state) {
+        return state.center.createSRecord("last" + ThreadLocalRandom.current().nextInt(1000));
+    }
+
+    @Benchmark
+    public String editRecord(CenterState state) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return state.center.editRecord(state.center.recordID(random.nextInt(state.size)), "phone",
+                "514" + random.nextInt(10000000));
+    }
+
+    @Benchmark
+    public int getLocalRecordCount(CenterState state) {
+        return state.center.getLocalRecordCount();
+    }
+
+    @Benchmark
+    public int udpCount(CenterState state) throws Exception {
+        return state.center.udpCount();
+    }
+
+    @Benchmark
+    public String nextTeacherId(IdState state) {
+        return state.allocator.nextTeacherId();
+    }
+
+    @Benchmark
+    public void log(LogState state) {
+        state.server.log("MTL0001", "benchmark", "Successful");
+    }
+
+    static int freeUdpPort() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+ * Importing records students into an empty journaled center, one createSRecord per record against
+ * createSRecords batches of batch students. Every iteration is one whole import into a fresh center and data
+ * directory; records/s is records divided by the reported time.
+ *
+ *   java -jar benchmarks/target/benchmarks.jar ImportBenchmark -p fsync=GROUP,INTERVAL
+ *
+ * This runs in-process, so it measures what the server saves per batch (one lock pass, one journal append
+ * and disk wait, one log entry); over CORBA each single call also pays a GIOP round trip on top.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImportBenchmark {
+    @Param({"100000"})
+    int records;
+
+    @Param({"1000"})
+    int batch;
+
+    @Param({"GROUP"})
+    String fsync;
+
+    private final Server server = Server.load();
+    private File dataDir;
+    private Server.Center center;
+
+    @Setup(Level.Iteration)
+    public void start() throws Exception {
+        dataDir = Files.createTempDirectory("import-benchmark").toFile();
+        center = server.startJournaledCenter(dataDir, fsync, HotPathBenchmark.freeUdpPort());
+    }
+
+    @TearDown(Level.Iteration)
+    public void stop() throws IOException {
+        center.shutdown();
+        try (Stream<Path> paths = Files.walk(dataDir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public int oneCallPerRecord() {
+        for (int i = 0; i < records; i++) {
+            center.createSRecord("last" + i);
+        }
+        return center.getLocalRecordCount();
+    }
+
+    @Benchmark
+    public int batches() {
+        for (int done = 0; done < records; done += batch) {
+            String[] lastNames = new String[Math.min(batch, records - done)];
+            for (int i = 0; i < lastNames.length; i++) {
+                lastNames[i] = "last" + (done + i);
+            }
+            center.createSRecords(lastNames);
+        }
+        return center.getLocalRecordCount();
+    }
+}
@@ -0,0 +1,78 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+ * Write throughput of a journaled center under each CenterJournal fsync policy: 8 threads create students,
+ * and one create in 10 is followed by a lastName edit of the new record. Every operation returns only once
+ * its policy considers it durable.
+ *
+ *   java -jar benchmarks/target/benchmarks.jar JournalBenchmark -p fsync=PER_OP,GROUP,INTERVAL
+ *
+ * Each trial journals to a fresh data directory, deleted afterwards. INTERVAL syncs every dcms.wal.fsyncMillis
+ * (pass it with -jvmArgsAppend -Ddcms.wal.fsyncMillis=...).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class JournalBenchmark {
+    @Param({"PER_OP", "GROUP", "INTERVAL"})
+    String fsync;
+
+    private final Server server = Server.load();
+    private File dataDir;
+    private Server.Center center;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        dataDir = Files.createTempDirectory("journal-benchmark").toFile();
+        center = server.startJournaledCenter(dataDir, fsync, HotPathBenchmark.freeUdpPort());
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws IOException {
+        center.shutdown();
+        try (Stream<Path> paths = Files.walk(dataDir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        int operations;
+    }
+
+    @Benchmark
+    public String createAndEdit(Writer writer) throws Exception {
+        String recordID = center.createSRecord("last");
+        if (++writer.operations % 10 == 0) {
+            return center.editRecord(recordID, "lastName", "edited");
+        }
+        return recordID;
+    }
+}
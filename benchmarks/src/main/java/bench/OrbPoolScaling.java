@@ -0,0 +1,107 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * CenterSystem throughput over CORBA as a function of the ORB worker pool of ServerBootstrap
+ * (dcms.orb.maxThreads). Not a JMH benchmark: the servers need orbd, so for every pool size of
+ * dcms.scaling.poolSizes (default 4,16,64,256) this runs LoadGenerator in its own JVM, which starts orbd and
+ * one center JVM per center with that pool, and collects the achieved throughput of every offered rate.
+ *
+ *   java -Ddcms.load.rates=500,1000,2000,4000 -cp benchmarks/target/benchmarks.jar bench.OrbPoolScaling
+ *
+ * Every other dcms.* property is passed on to LoadGenerator and from there to the servers. Each pool size
+ * gets its own naming service port, counting up from dcms.load.orbPort (default 1050). The output of
+ * LoadGenerator is echoed; a table of achieved ops/s per pool size and rate closes the run.
+ */
+public class OrbPoolScaling {
+    private static final Pattern RATE = Pattern.compile("rate (\\d+) ops/s: achieved ([\\d.]+) ops/s, (\\d+) delayed");
+    private static final Pattern SATURATION = Pattern.compile("saturation throughput: (.*)");
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int[] poolSizes = Arrays.stream(System.getProperty("dcms.scaling.poolSizes", "4,16,64,256").split(","))
+                .map(String::trim).mapToInt(Integer::parseInt).toArray();
+        int orbPort = Integer.getInteger("dcms.load.orbPort", 1050);
+
+        Map<Integer, Map<Integer, String>> achieved = new LinkedHashMap<>();
+        Map<Integer, String> saturation = new LinkedHashMap<>();
+        List<Integer> rates = new ArrayList<>();
+        for (int i = 0; i < poolSizes.length; i++) {
+            int poolSize = poolSizes[i];
+            System.out.println("=== dcms.orb.maxThreads=" + poolSize);
+            Map<Integer, String> row = new LinkedHashMap<>();
+            achieved.put(poolSize, row);
+            for (String line : loadGenerator(poolSize, orbPort + i)) {
+                Matcher matcher = RATE.matcher(line);
+                if (matcher.find()) {
+                    int rate = Integer.parseInt(matcher.group(1));
+                    if (!rates.contains(rate)) rates.add(rate);
+                    row.put(rate, matcher.group(2) + (matcher.group(3).equals("0") ? "" : "*"));
+                }
+                matcher = SATURATION.matcher(line);
+                if (matcher.find()) {
+                    saturation.put(poolSize, matcher.group(1));
+                }
+            }
+        }
+
+        System.out.printf("%nachieved ops/s by ORB pool size and offered rate (* some requests delayed)%n");
+        System.out.printf("%8s", "pool");
+        for (int rate : rates) {
+            System.out.printf(" %10s", rate);
+        }
+        System.out.printf("  %s%n", "saturation");
+        for (Map.Entry<Integer, Map<Integer, String>> row : achieved.entrySet()) {
+            System.out.printf("%8d", row.getKey());
+            for (int rate : rates) {
+                System.out.printf(" %10s", row.getValue().getOrDefault(rate, "-"));
+            }
+            System.out.printf("  %s%n", saturation.getOrDefault(row.getKey(), "-"));
+        }
+    }
+
+    /*
+     * Runs LoadGenerator against servers with the given pool and returns its output lines.
+     */
+    private static List<String> loadGenerator(int poolSize, int orbPort) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path")));
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("dcms.") && !name.startsWith("dcms.scaling.") && !name.equals("dcms.orb.maxThreads")
+                    && !name.equals("dcms.load.orbPort")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add("-Ddcms.orb.maxThreads=" + poolSize);
+        command.add("-Ddcms.load.orbPort=" + orbPort);
+        command.add("LoadGenerator");
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                System.out.println(line);
+                lines.add(line);
+            }
+        }
+        int exit = process.waitFor();
+        if (exit != 0) {
+            throw new IllegalStateException("LoadGenerator exited with " + exit + " for pool size " + poolSize);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,77 @@
+package bench;
+
+import Record.RecordIdAllocator;
+import Record.Records;
+import Record.TeacherRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * How editRecord finds the record to edit, before and after the record-ID index: bucketScan walks the
+ * last-name buckets (HashMap<Character, ArrayList<Records>>) like editRecord used to, index is one
+ * RecordStore.get. Both look up a random existing ID among size teachers spread over 26 initials.
+ *
+ *   java -jar benchmarks/target/benchmarks.jar RecordLookupBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class RecordLookupBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int size;
+
+    private String[] recordIDs;
+    private HashMap<Character, ArrayList<Records>> buckets;
+    private Server.Store store;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        recordIDs = new String[size];
+        buckets = new HashMap<>();
+        store = Server.load().newStore();
+        for (int i = 0; i < size; i++) {
+            String lastName = (char) ('A' + i % 26) + "last" + i;
+            TeacherRecord record = new TeacherRecord(RecordIdAllocator.teacherId(i + 1), "first", lastName, "address",
+                    "5140000000", "french", "MTL");
+            recordIDs[i] = record.getRecordID();
+            buckets.computeIfAbsent(lastName.charAt(0), k -> new ArrayList<>()).add(record);
+            store.add(record);
+        }
+    }
+
+    @Benchmark
+    public Records bucketScan() {
+        String recordID = recordIDs[ThreadLocalRandom.current().nextInt(size)];
+        for (char key : buckets.keySet()) {
+            for (Records record : buckets.get(key)) {
+                if (record.getRecordID().equals(recordID)) {
+                    return record;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Records index() {
+        return store.get(recordIDs[ThreadLocalRandom.current().nextInt(size)]);
+    }
+}
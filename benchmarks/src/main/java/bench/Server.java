@@ -0,0 +1,105 @@
+package bench;
+
+import Record.Records;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/*
+ * The parts of the server the benchmarks drive. The server classes live in the default package, which a JMH
+ * benchmark can't import, so they are reached through this interface, implemented by the default-package
+ * ServerAccess of this module.
+ */
+public interface Server {
+
+    static Server load() {
+        try {
+            return (Server) Class.forName("ServerAccess").newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("ServerAccess is missing from the benchmark classpath", e);
+        }
+    }
+
+    /*
+     * A center named MTL holding records in memory only, preloaded with size teachers and serving UDP on udpPort.
+     */
+    Center startCenter(int size, int udpPort) throws Exception;
+
+    /*
+     * An empty center named MTL journaling to dataDir/MTL with fsync, a CenterJournal.FsyncPolicy name, and
+     * serving UDP on udpPort.
+     */
+    Center startJournaledCenter(File dataDir, String fsync, int udpPort) throws Exception;
+
+    /*
+     * The next teacher ID of an allocator private to the caller's state.
+     */
+    IdAllocator idAllocator();
+
+    void log(String managerId, String operation, String result);
+
+    /*
+     * An empty RecordStore.
+     */
+    Store newStore();
+
+    /*
+     * SnapshotFile.write with generation 1.
+     */
+    void writeSnapshot(File file, Collection<Records> records) throws IOException;
+
+    /*
+     * SnapshotFile.read.
+     */
+    void readSnapshot(File file, Consumer<Records> consumer) throws IOException;
+
+    /*
+     * Writes a UDPMessage COUNT request for every record type into buffer and flips it, ready to send.
+     */
+    void countRequest(ByteBuffer buffer, long requestId);
+
+    /*
+     * The count in a received COUNT reply frame.
+     */
+    int countReply(ByteBuffer frame);
+
+    interface Center {
+        String createTRecord(String lastName);
+
+        String createSRecord(String lastName);
+
+        /*
+         * createSRecords with one student per last name, in one call.
+         */
+        String[] createSRecords(String[] lastNames);
+
+        String editRecord(String recordID, String fieldName, String newValue) throws Exception;
+
+        int getLocalRecordCount();
+
+        /*
+         * A COUNT of every record of the center over UDP, through the shared UDPClient.
+         */
+        int udpCount() throws Exception;
+
+        /*
+         * ID of the index-th preloaded record.
+         */
+        String recordID(int index);
+
+        void shutdown();
+    }
+
+    interface Store {
+        boolean add(Records record);
+
+        Records get(String recordID);
+    }
+
+    interface IdAllocator {
+        String nextTeacherId();
+    }
+}
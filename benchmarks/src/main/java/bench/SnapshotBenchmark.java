@@ -0,0 +1,128 @@
+package bench;
+
+import Record.Records;
+import Record.StudentRecord;
+import Record.TeacherRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Writing and reading a snapshot of size records, half teachers and half students, the way CenterJournal used
+ * to and the way it does now: objectStream writes each record with ObjectOutputStream (reset after each, forced
+ * at the end) and reads them back with ObjectInputStream; snapshotFile goes through SnapshotFile. The read
+ * benchmarks read a file written once in setup. File sizes are printed at setup, allocation per snapshot is
+ * JMH's gc.alloc.rate.norm:
+ *
+ *   java -jar benchmarks/target/benchmarks.jar SnapshotBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+    @Param({"100000", "1000000"})
+    int size;
+
+    private final Server server = Server.load();
+    private final List<Records> records = new ArrayList<>();
+    private File dir;
+    private File objectFile;
+    private File snapshotFile;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        for (int i = 1; i <= size / 2; i++) {
+            records.add(new TeacherRecord(String.format("TR%05d", i), "first", "last" + i, "address", "5140000000",
+                    "french", "MTL"));
+            records.add(new StudentRecord(String.format("SR%05d", i), "first", "last" + i,
+                    new String[]{"math", "french"}, "active", "2018-01-01"));
+        }
+        dir = Files.createTempDirectory("snapshot-benchmark").toFile();
+        objectFile = new File(dir, "object");
+        snapshotFile = new File(dir, "snapshot");
+        writeObjects(objectFile);
+        server.writeSnapshot(snapshotFile, records);
+        System.out.println("\nObjectOutputStream " + objectFile.length() + " bytes, SnapshotFile "
+                + snapshotFile.length() + " bytes");
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public long objectStreamWrite() throws IOException {
+        File file = new File(dir, "object.written");
+        writeObjects(file);
+        return file.length();
+    }
+
+    @Benchmark
+    public long snapshotFileWrite() throws IOException {
+        File file = new File(dir, "snapshot.written");
+        server.writeSnapshot(file, records);
+        return file.length();
+    }
+
+    @Benchmark
+    public int objectStreamRead() throws Exception {
+        int read = 0;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(objectFile)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                read += ((Records) in.readObject()).getRecordID().length();
+            }
+        }
+        return read;
+    }
+
+    @Benchmark
+    public int snapshotFileRead() throws IOException {
+        int[] read = new int[1];
+        server.readSnapshot(snapshotFile, record -> read[0] += record.getRecordID().length());
+        return read[0];
+    }
+
+    private void writeObjects(File file) throws IOException {
+        try (FileOutputStream fileOut = new FileOutputStream(file);
+             ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(fileOut, 64 * 1024))) {
+            out.writeInt(records.size());
+            for (Records record : records) {
+                out.writeObject(record);
+                out.reset();
+            }
+            out.flush();
+            fileOut.getChannel().force(true);
+        }
+    }
+}
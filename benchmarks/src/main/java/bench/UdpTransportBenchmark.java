@@ -0,0 +1,73 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A COUNT round trip to a local center, the way UDPClient used to send it and the way it does now:
+ * perCallSocket opens a DatagramSocket, looks up the local host and allocates 1 KB arrays on every call;
+ * sharedChannel goes through the shared UDPClient's channel and pooled buffers. Both send the same frame to
+ * the same UDPServer. Allocation per request is JMH's gc.alloc.rate.norm:
+ *
+ *   java -jar benchmarks/target/benchmarks.jar UdpTransportBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UdpTransportBenchmark {
+    private final Server server = Server.load();
+    private Server.Center center;
+    private int udpPort;
+    private long nextRequestId;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        udpPort = HotPathBenchmark.freeUdpPort();
+        center = server.startCenter(0, udpPort);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        center.shutdown();
+    }
+
+    @Benchmark
+    public int perCallSocket() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(1000);
+            byte[] request = new byte[1024];
+            ByteBuffer frame = ByteBuffer.wrap(request);
+            server.countRequest(frame, ++nextRequestId);
+            socket.send(new DatagramPacket(request, frame.limit(), InetAddress.getLocalHost(), udpPort));
+            byte[] reply = new byte[1024];
+            DatagramPacket packet = new DatagramPacket(reply, reply.length);
+            socket.receive(packet);
+            return server.countReply(ByteBuffer.wrap(reply, 0, packet.getLength()));
+        }
+    }
+
+    @Benchmark
+    public int sharedChannel() throws Exception {
+        return center.udpCount();
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/*
+ * The centers of a deployment and the UDP address each answers peers on, in the order their counts are reported.
+ *
+ * Written as a comma separated list of NAME:port or NAME:host:port entries, e.g. "MTL:8180,LVL:8181,DDO:8182";
+ * host defaults to localhost. Servers and clients read it from the centers entry of a config file or from the
+ * dcms.centers property, falling back to the three original centers.
+ *
+ * Names are NAME_LENGTH characters: a manager ID starts with its center's name and is routed and logged by
+ * that prefix, see centerOf.
+ */
+public class CenterConfig {
+    public static final String DEFAULT_CENTERS = "MTL:8180,LVL:8181,DDO:8182";
+    public static final int NAME_LENGTH = 3;
+    private static final String DEFAULT_HOST = "localhost";
+
+    private final Map<String, InetSocketAddress> centers;
+
+    private CenterConfig(Map<String, InetSocketAddress> centers) {
+        this.centers = Collections.unmodifiableMap(centers);
+    }
+
+    public static CenterConfig parse(String spec) {
+        Map<String, InetSocketAddress> centers = new LinkedHashMap<>();
+        for (String entry : spec.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) continue;
+            String[] parts = entry.split(":");
+            if (parts.length < 2 || parts.length > 3 || parts[0].isEmpty()) {
+                throw new IllegalArgumentException("Center entry must be NAME:port or NAME:host:port, got " + entry);
+            }
+            if (parts[0].length() != NAME_LENGTH) {
+                throw new IllegalArgumentException("Center name must be " + NAME_LENGTH + " characters, got " + parts[0]);
+            }
+            String host = parts.length == 3 ? parts[1] : DEFAULT_HOST;
+            int port;
+            try {
+                port = Integer.parseInt(parts[parts.length - 1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad UDP port in center entry " + entry);
+            }
+            if (centers.put(parts[0], InetSocketAddress.createUnresolved(host, port)) != null) {
+                throw new IllegalArgumentException("Center " + parts[0] + " is listed twice");
+            }
+        }
+        if (centers.isEmpty()) {
+            throw new IllegalArgumentException("No centers in \"" + spec + "\"");
+        }
+        return new CenterConfig(centers);
+    }
+
+    /*
+     * Centers from the dcms.centers property, or the default three.
+     */
+    public static CenterConfig fromSystemProperties() {
+        return parse(System.getProperty("dcms.centers", DEFAULT_CENTERS));
+    }
+
+    /*
+     * Reads a properties file. Its centers entry is the center list; every other entry is a setting such as
+     * dcms.orb.maxThreads and is copied into the system properties unless already set on the command line.
+     */
+    public static CenterConfig load(File file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        for (String name : properties.stringPropertyNames()) {
+            if (!name.equals("centers") && System.getProperty(name) == null) {
+                System.setProperty(name, properties.getProperty(name));
+            }
+        }
+        String spec = properties.getProperty("centers");
+        return spec == null ? fromSystemProperties() : parse(spec);
+    }
+
+    /*
+     * The center a manager or record ID belongs to, its first NAME_LENGTH characters; null if it is shorter.
+     */
+    public static String centerOf(String id) {
+        return id.length() < NAME_LENGTH ? null : id.substring(0, NAME_LENGTH);
+    }
+
+    public Map<String, InetSocketAddress> centers() {
+        return centers;
+    }
+
+    public boolean contains(String centerName) {
+        return centers.containsKey(centerName);
+    }
+
+    public InetSocketAddress address(String centerName) {
+        InetSocketAddress address = centers.get(centerName);
+        if (address == null) {
+            throw new IllegalArgumentException("Unknown center " + centerName + ", configured: " + centers.keySet());
+        }
+        return address;
+    }
+}
@@ -0,0 +1,420 @@
+import Record.Records;
+import Record.StudentRecord;
+import Record.TeacherRecord;
+
+import java.io.*;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/*
+ * Durable storage of one center: an append-only write-ahead log of creates and edits plus periodic snapshots.
+ *
+ * The log is split into generations wal.<n>. A snapshot of generation n holds every record as of the moment
+ * wal.<n> was started, so recovery loads the snapshot and replays wal.<n> and later. Snapshots are taken
+ * while writers keep going: the log is rotated under the write lock (no operation is half-logged or
+ * half-applied at that point), then the store is copied. Replay is idempotent - a create of a known ID is
+ * skipped and an edit overwrites the field - so records copied after the rotation come out the same.
+ *
+ * When an operation counts as durable depends on the fsync policy:
+ * PER_OP forces the log after every entry, GROUP lets concurrent callers share one force (whoever finds
+ * their entry not yet forced forces everything written so far), INTERVAL forces on a timer and never
+ * makes callers wait.
+ */
+public class CenterJournal {
+
+    public enum FsyncPolicy { PER_OP, GROUP, INTERVAL }
+
+    /*
+     * Callbacks through which recovery rebuilds the center.
+     */
+    public interface Replay {
+        void create(Records record);
+
+        void edit(String recordID, String fieldName, String newValue);
+    }
+
+    public interface Action {
+        void run() throws Exception;
+    }
+
+    private static final byte TEACHER_CREATE = 1;
+    private static final byte STUDENT_CREATE = 2;
+    private static final byte EDIT = 3;
+    private static final String SNAPSHOT = "snapshot";
+    private static final String WAL_PREFIX = "wal.";
+
+    private final File dir;
+    private final FsyncPolicy policy;
+    private final ReentrantReadWriteLock rotationLock = new ReentrantReadWriteLock();
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    private final ScheduledExecutorService background = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // guarded by writeLock; wal is null once closed
+    private FileOutputStream walFile;
+    private DataOutputStream wal;
+    private long generation;
+    private long written;
+    private long entriesSinceSnapshot;
+    // highest entry number known to be on disk
+    private volatile long synced;
+
+    public CenterJournal(File dir, FsyncPolicy policy) {
+        this.dir = dir;
+        this.policy = policy;
+    }
+
+    /*
+     * Loads the last snapshot, replays the log written after it and starts a fresh log generation.
+     */
+    public void recover(Replay replay) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create data directory " + dir);
+        }
+        long snapshotGeneration = 0;
+        File snapshot = new File(dir, SNAPSHOT);
+        if (snapshot.exists()) {
+            snapshotGeneration = readSnapshot(snapshot, replay);
+        }
+        long last = snapshotGeneration;
+        for (long walGeneration : walGenerations()) {
+            if (walGeneration >= snapshotGeneration) {
+                replayLog(new File(dir, WAL_PREFIX + walGeneration), replay);
+            }
+            last = Math.max(last, walGeneration);
+        }
+        synchronized (writeLock) {
+            openGeneration(last + 1);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "journal-shutdown"));
+        if (policy == FsyncPolicy.INTERVAL) {
+            long fsyncMillis = Long.getLong("dcms.wal.fsyncMillis", 1000);
+            background.scheduleWithFixedDelay(this::forceQuietly, fsyncMillis, fsyncMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void scheduleSnapshots(RecordStore store, long intervalMillis) {
+        background.scheduleWithFixedDelay(() -> {
+            try {
+                if (entriesSinceSnapshot() > 0) snapshot(store);
+            } catch (IOException e) {
+                System.out.println("Snapshot of " + dir + " failed: " + e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Logs the create, then applies it. Returns the entry number to pass to awaitDurable.
+     */
+    public long logCreate(Records record, Action apply) throws Exception {
+        byte[] entry = encodeCreate(record);
+        rotationLock.readLock().lock();
+        try {
+            long position = append(entry);
+            apply.run();
+            return position;
+        } finally {
+            rotationLock.readLock().unlock();
+        }
+    }
+
+    /*
+     * Logs all creates in one append, then applies them. Returns the entry number of the last one.
+     */
+    public long logCreates(List<? extends Records> records, Action apply) throws Exception {
+        byte[][] entries = new byte[records.size()][];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = encodeCreate(records.get(i));
+        }
+        rotationLock.readLock().lock();
+        try {
+            long position = append(entries);
+            apply.run();
+            return position;
+        } finally {
+            rotationLock.readLock().unlock();
+        }
+    }
+
+    /*
+     * Logs the edit, then applies it, so an edit is never in memory without being in the log; callers check it
+     * can be applied first, and one that still fails is skipped again on replay. Callers hold the record's
+     * monitor, which keeps the log order of edits to one record the same as the order they were applied in.
+     */
+    public long logEdit(String recordID, String fieldName, String newValue, Action apply) throws Exception {
+        byte[] entry = encodeEdit(recordID, fieldName, newValue);
+        rotationLock.readLock().lock();
+        try {
+            long position = append(entry);
+            apply.run();
+            return position;
+        } finally {
+            rotationLock.readLock().unlock();
+        }
+    }
+
+    /*
+     * Returns once the entry is on disk; with INTERVAL it returns straight away.
+     */
+    public void awaitDurable(long position) throws IOException {
+        if (policy != FsyncPolicy.GROUP || synced >= position) return;
+        synchronized (syncLock) {
+            if (synced >= position) return;
+            force();
+        }
+    }
+
+    /*
+     * Starts a new log generation and writes the store to a snapshot of it; older generations are deleted
+     * once the snapshot is safely in place.
+     */
+    public void snapshot(RecordStore store) throws IOException {
+        long snapshotGeneration;
+        rotationLock.writeLock().lock();
+        try {
+            // no appends can start now; everything logged so far goes to disk before the generation changes
+            forceQuietly();
+            synchronized (writeLock) {
+                ensureOpen();
+                wal.close();
+                openGeneration(generation + 1);
+                snapshotGeneration = generation;
+                entriesSinceSnapshot = 0;
+            }
+        } finally {
+            rotationLock.writeLock().unlock();
+        }
+        File tmp = new File(dir, SNAPSHOT + ".tmp");
+        writeSnapshot(tmp, snapshotGeneration, store);
+        Files.move(tmp.toPath(), new File(dir, SNAPSHOT).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (long walGeneration : walGenerations()) {
+            if (walGeneration < snapshotGeneration) {
+                new File(dir, WAL_PREFIX + walGeneration).delete();
+            }
+        }
+    }
+
+    /*
+     * Forces and closes the log. Appends after this fail with an IOException.
+     */
+    public void close() {
+        background.shutdown();
+        synchronized (writeLock) {
+            if (wal == null) return;
+            try {
+                wal.flush();
+                walFile.getChannel().force(false);
+                synced = written;
+                wal.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            wal = null;
+        }
+    }
+
+    private long entriesSinceSnapshot() {
+        synchronized (writeLock) {
+            return entriesSinceSnapshot;
+        }
+    }
+
+    private long append(byte[]... entries) throws IOException {
+        synchronized (writeLock) {
+            ensureOpen();
+            CRC32 crc = new CRC32();
+            for (byte[] entry : entries) {
+                crc.reset();
+                crc.update(entry, 0, entry.length);
+                wal.writeInt(entry.length);
+                wal.writeInt((int) crc.getValue());
+                wal.write(entry);
+            }
+            written += entries.length;
+            entriesSinceSnapshot += entries.length;
+            long position = written;
+            if (policy == FsyncPolicy.PER_OP) {
+                wal.flush();
+                walFile.getChannel().force(false);
+                synced = position;
+            }
+            return position;
+        }
+    }
+
+    private void force() throws IOException {
+        FileChannel channel;
+        long position;
+        synchronized (writeLock) {
+            // close() forced everything that was written
+            if (wal == null) return;
+            wal.flush();
+            channel = walFile.getChannel();
+            position = written;
+        }
+        // forced outside writeLock so appends carry on while the disk catches up
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // a snapshot rotated the log meanwhile, and forced it before closing
+        }
+        if (position > synced) synced = position;
+    }
+
+    private void forceQuietly() {
+        try {
+            synchronized (syncLock) {
+                force();
+            }
+        } catch (IOException e) {
+            System.out.println("Journal fsync of " + dir + " failed: " + e.getMessage());
+        }
+    }
+
+    // callers hold writeLock
+    private void ensureOpen() throws IOException {
+        if (wal == null) {
+            throw new IOException("Journal of " + dir + " is closed");
+        }
+    }
+
+    private void openGeneration(long nextGeneration) throws IOException {
+        generation = nextGeneration;
+        walFile = new FileOutputStream(new File(dir, WAL_PREFIX + generation), true);
+        wal = new DataOutputStream(new BufferedOutputStream(walFile, 64 * 1024));
+    }
+
+    private long[] walGenerations() {
+        List<Long> generations = new ArrayList<>();
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                if (!name.startsWith(WAL_PREFIX)) continue;
+                try {
+                    generations.add(Long.parseLong(name.substring(WAL_PREFIX.length())));
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        long[] sorted = new long[generations.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = generations.get(i);
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private void replayLog(File file, Replay replay) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte[] entry;
+                try {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    entry = new byte[length];
+                    in.readFully(entry);
+                    CRC32 crc = new CRC32();
+                    crc.update(entry, 0, length);
+                    if ((int) crc.getValue() != checksum) break;
+                } catch (EOFException | NegativeArraySizeException | OutOfMemoryError e) {
+                    // torn tail of a crash: everything before it was complete
+                    break;
+                }
+                decode(entry, replay);
+            }
+        }
+    }
+
+    static byte[] encodeCreate(Records record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (record instanceof TeacherRecord) {
+            TeacherRecord teacher = (TeacherRecord) record;
+            out.writeByte(TEACHER_CREATE);
+            out.writeUTF(teacher.getRecordID());
+            out.writeUTF(teacher.getFirstName());
+            out.writeUTF(teacher.getLastName());
+            out.writeUTF(teacher.getAddress());
+            out.writeUTF(teacher.getPhone());
+            out.writeUTF(teacher.getSpecialiazation());
+            out.writeUTF(teacher.getLocation());
+        } else {
+            StudentRecord student = (StudentRecord) record;
+            out.writeByte(STUDENT_CREATE);
+            out.writeUTF(student.getRecordID());
+            out.writeUTF(student.getFirstName());
+            out.writeUTF(student.getLastName());
+            List<String> courses = student.getCoursesRegistered();
+            out.writeInt(courses.size());
+            for (String course : courses) {
+                out.writeUTF(course);
+            }
+            out.writeUTF(student.getStatus());
+            out.writeUTF(student.getStatusDate());
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] encodeEdit(String recordID, String fieldName, String newValue) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(EDIT);
+        out.writeUTF(recordID);
+        out.writeUTF(fieldName);
+        out.writeUTF(newValue);
+        return bytes.toByteArray();
+    }
+
+    private static void decode(byte[] entry, Replay replay) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+        byte type = in.readByte();
+        switch (type) {
+            case TEACHER_CREATE: {
+                replay.create(new TeacherRecord(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(),
+                        in.readUTF(), in.readUTF(), in.readUTF()));
+                break;
+            }
+            case STUDENT_CREATE: {
+                String recordID = in.readUTF();
+                String firstName = in.readUTF();
+                String lastName = in.readUTF();
+                String[] courses = new String[in.readInt()];
+                for (int i = 0; i < courses.length; i++) {
+                    courses[i] = in.readUTF();
+                }
+                replay.create(new StudentRecord(recordID, firstName, lastName, courses, in.readUTF(), in.readUTF()));
+                break;
+            }
+            case EDIT: {
+                replay.edit(in.readUTF(), in.readUTF(), in.readUTF());
+                break;
+            }
+            default:
+                throw new IOException("Unknown journal entry type " + type);
+        }
+    }
+
+    private long readSnapshot(File file, Replay replay) throws IOException {
+        return SnapshotFile.read(file, replay::create);
+    }
+
+    private void writeSnapshot(File file, long snapshotGeneration, RecordStore store) throws IOException {
+        SnapshotFile.write(file, snapshotGeneration, store.records());
+    }
+}
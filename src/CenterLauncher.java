@@ -0,0 +1,106 @@
+import Record.RecordFields;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Starts center servers.
+ *
+ *   java CenterLauncher [--config file] [--centers MTL:8180,LVL:8181,DDO:8182] [--start MTL,LVL] [--fork]
+ *                       [ORB arguments, e.g. -ORBInitialPort 1050]
+ *
+ * --config  properties file with a centers entry and any dcms.* settings
+ * --centers the centers of the deployment (default dcms.centers or the config file); every center knows all of
+ *           them as peers
+ * --start   the centers to serve from this launch (default all of them)
+ * --fork    serve each started center from its own JVM instead of all from this one
+ *
+ * Centers on other hosts are started by a launcher there, given the same --centers and its own --start.
+ */
+public class CenterLauncher {
+
+    public static void main(String args[]) throws Exception {
+        CenterConfig config = null;
+        String centers = null;
+        List<String> start = null;
+        boolean fork = false;
+        List<String> orbArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--config":
+                    config = CenterConfig.load(new File(value(args, ++i)));
+                    break;
+                case "--centers":
+                    centers = value(args, ++i);
+                    break;
+                case "--start":
+                    start = Arrays.asList(value(args, ++i).split(","));
+                    break;
+                case "--fork":
+                    fork = true;
+                    break;
+                default:
+                    orbArgs.add(args[i]);
+            }
+        }
+        if (centers != null) {
+            config = CenterConfig.parse(centers);
+        } else if (config == null) {
+            config = CenterConfig.fromSystemProperties();
+        }
+        if (start == null) {
+            start = new ArrayList<>(config.centers().keySet());
+        }
+        for (String centerName : start) {
+            config.address(centerName);
+        }
+        RecordFields.setCenters(config.centers().keySet());
+
+        if (fork) {
+            forkEach(config, start, orbArgs);
+        } else {
+            ServerBootstrap.run(orbArgs.toArray(new String[0]), config, start);
+        }
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        }
+        return args[i];
+    }
+
+    /*
+     * Runs one child JVM per center, with this JVM's classpath and dcms.* settings, until all of them exit.
+     */
+    private static void forkEach(CenterConfig config, List<String> start, List<String> orbArgs) throws Exception {
+        StringBuilder spec = new StringBuilder();
+        config.centers().forEach((name, address) -> spec.append(spec.length() == 0 ? "" : ",")
+                .append(name).append(':').append(address.getHostString()).append(':').append(address.getPort()));
+        List<Process> children = new ArrayList<>();
+        for (String centerName : start) {
+            List<String> command = new ArrayList<>();
+            command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            for (String name : System.getProperties().stringPropertyNames()) {
+                if (name.startsWith("dcms.")) {
+                    command.add("-D" + name + "=" + System.getProperty(name));
+                }
+            }
+            command.add(CenterLauncher.class.getName());
+            command.add("--centers");
+            command.add(spec.toString());
+            command.add("--start");
+            command.add(centerName);
+            command.addAll(orbArgs);
+            children.add(new ProcessBuilder(command).inheritIO().start());
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> children.forEach(Process::destroy)));
+        for (Process child : children) {
+            child.waitFor();
+        }
+    }
+}
@@ -1,11 +1,22 @@
 import CenterServer.CenterServicePOA;
+import CenterServer.EditInfo;
+import CenterServer.RecordInfo;
+import CenterServer.RecordPage;
+import CenterServer.StudentInfo;
+import CenterServer.TeacherInfo;
 import CenterServer.CenterServicePackage.except;
+import Record.RecordFields;
+import Record.RecordIdAllocator;
 import Record.Records;
 import Record.StudentRecord;
 import Record.TeacherRecord;
 import org.omg.CORBA.ORB;
 
-import java.beans.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
@@ -14,14 +25,94 @@ import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 public class CenterSystem extends CenterServicePOA {
-    protected HashMap<Character, ArrayList<Records>> database = new HashMap<>();
+    protected RecordStore store = new RecordStore();
+    private final RecordIdAllocator idAllocator = new RecordIdAllocator();
     private UDPServer udpServer;
     private static final String host_name = "localhost";
+    private static final String UNAVAILABLE = "unavailable";
+    // after a peer's last known count when it can't be asked or didn't answer
+    private static final String STALE = "(stale)";
 
+    private final String centerName;
+    // other centers answering COUNT queries, in the order their counts are reported
+    private final Map<String, InetSocketAddress> peers;
+    private volatile int peerTimeoutMillis = Integer.getInteger("dcms.peerTimeoutMillis", 2000);
+    // counts pushed by the peers, used by getRecordCounts while younger than maxStalenessMillis
+    private final PeerCounts peerCounts;
+    private final long pushMillis = Long.getLong("dcms.counts.pushMillis", 1000);
+    // suspects silent peers and breaks the circuit to peers that stopped answering
+    private final PeerHealth peerHealth;
+    private volatile long maxStalenessMillis = Long.getLong("dcms.counts.maxStalenessMillis", 3000);
+    private final LongAdder pushedCountsUsed = new LongAdder();
+    // live COUNT queries, shared by concurrent getRecordCounts calls and for countTtlMillis after a reply
+    private final CountQueries countQueries = new CountQueries();
+    private volatile long countTtlMillis = Long.getLong("dcms.counts.ttlMillis", 0);
+    // null when dcms.data.dir is set empty, then records live in memory only
+    private final CenterJournal journal;
 
-    public CenterSystem(int udpPortnumber) {
+    // latency of each remote operation, named <center>.<operation> in Metrics
+    private final Metrics.Timer createTRecordTimer;
+    private final Metrics.Timer createSRecordTimer;
+    private final Metrics.Timer getRecordCountsTimer;
+    private final Metrics.Timer editRecordTimer;
+    private final Metrics.Timer createTRecordsTimer;
+    private final Metrics.Timer createSRecordsTimer;
+    private final Metrics.Timer editRecordsTimer;
+    private final Metrics.Timer findRecordsTimer;
+    private final Metrics.Timer exportRecordsTimer;
+    private final Metrics.Timer listAllRecordsTimer;
+    private final int maxPageSize = Integer.getInteger("dcms.query.maxPageSize", 500);
+
+    public CenterSystem(String centerName, int udpPortnumber) {
+        this(centerName, udpPortnumber, CenterConfig.fromSystemProperties().centers());
+    }
+
+    /*
+     * centers may list this center too; it is skipped when building the peer table.
+     */
+    public CenterSystem(String centerName, int udpPortnumber, Map<String, InetSocketAddress> centers) {
+        this.centerName = centerName;
+        this.peers = new LinkedHashMap<>();
+        for (Map.Entry<String, InetSocketAddress> center : centers.entrySet()) {
+            InetSocketAddress address = center.getValue();
+            if (!center.getKey().equals(centerName)) {
+                // resolved once here instead of on every query
+                this.peers.put(center.getKey(), address.isUnresolved()
+                        ? new InetSocketAddress(address.getHostString(), address.getPort()) : address);
+            }
+        }
+        this.journal = openJournal(centerName);
+        this.createTRecordTimer = Metrics.timer(centerName + ".createTRecord");
+        this.createSRecordTimer = Metrics.timer(centerName + ".createSRecord");
+        this.getRecordCountsTimer = Metrics.timer(centerName + ".getRecordCounts");
+        this.editRecordTimer = Metrics.timer(centerName + ".editRecord");
+        this.createTRecordsTimer = Metrics.timer(centerName + ".createTRecords");
+        this.createSRecordsTimer = Metrics.timer(centerName + ".createSRecords");
+        this.editRecordsTimer = Metrics.timer(centerName + ".editRecords");
+        this.findRecordsTimer = Metrics.timer(centerName + ".findRecords");
+        this.exportRecordsTimer = Metrics.timer(centerName + ".exportRecords");
+        this.listAllRecordsTimer = Metrics.timer(centerName + ".listAllRecords");
+        Metrics.gauge(centerName + ".store.size", store::size);
+        Metrics.gauge(centerName + ".counts.pushed", pushedCountsUsed::sum);
+        Metrics.gauge(centerName + ".counts.live", countQueries::requested);
+        Metrics.gauge(centerName + ".counts.peerQueries", countQueries::sent);
+        Metrics.gauge(centerName + ".counts.coalesced", () -> countQueries.requested() - countQueries.sent());
+        Metrics.gauge(centerName + ".counts.coalescedPercent", () -> {
+            long requested = countQueries.requested();
+            return requested == 0 ? 0 : 100 * (requested - countQueries.sent()) / requested;
+        });
+        this.peerCounts = new PeerCounts(centerName, peers, store::size);
+        peerCounts.start(pushMillis);
+        this.peerHealth = new PeerHealth(centerName, peers.keySet());
         new Thread(()->{
             udpServer = new UDPServer(udpPortnumber, this);
             udpServer.run();
@@ -29,176 +120,563 @@ public class CenterSystem extends CenterServicePOA {
     }
 
     private ORB orb;
+    // how shutdown() takes this center off the ORB; by default the whole ORB stops
+    private Runnable shutdownAction;
 
     public void setORB(ORB orb_val) {
         orb = orb_val;
     }
 
-    private void validateRecordId(Records inRecord, char key) {
-        String recordId = inRecord.getRecordID();
-        if (database.get(key) != null) {
-            for (Records record : database.get(key)) {
-                if (record.getRecordID().equals(recordId)) {
-                    inRecord.regenRecordID();
-                    validateRecordId(inRecord, key);
-                    break;
+    public void setShutdownAction(Runnable shutdownAction) {
+        this.shutdownAction = shutdownAction;
+    }
+
+    public String getCenterName() {
+        return centerName;
+    }
+
+    private static UDPClient peerClient() {
+        try {
+            return UDPClient.shared();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void setPeerTimeoutMillis(int peerTimeoutMillis) {
+        this.peerTimeoutMillis = peerTimeoutMillis;
+    }
+
+    /*
+     * How old a pushed peer count may be and still be reported; 0 always queries the peers.
+     */
+    public void setMaxStalenessMillis(long maxStalenessMillis) {
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    /*
+     * How long a live peer count is reused by later getRecordCounts calls; 0 only shares queries in flight.
+     */
+    public void setCountTtlMillis(long countTtlMillis) {
+        this.countTtlMillis = countTtlMillis;
+    }
+
+    void receiveCountDigest(ByteBuffer digest) {
+        String peer = peerCounts.receive(digest);
+        if (peer != null) {
+            peerHealth.heartbeat(peer, peerCounts.pushMillis(peer));
+        }
+    }
+
+    /*
+     * Recovers the records of this center from dcms.data.dir/<center> and keeps logging to it.
+     */
+    private CenterJournal openJournal(String centerName) {
+        String dataDir = System.getProperty("dcms.data.dir", "./data");
+        if (dataDir.isEmpty()) return null;
+        CenterJournal.FsyncPolicy policy =
+                CenterJournal.FsyncPolicy.valueOf(System.getProperty("dcms.wal.fsync", "GROUP").toUpperCase());
+        CenterJournal centerJournal = new CenterJournal(new File(dataDir, centerName), policy);
+        try {
+            centerJournal.recover(new CenterJournal.Replay() {
+                public void create(Records record) {
+                    if (store.add(record)) {
+                        idAllocator.advancePast(record.getRecordID());
+                    }
                 }
+
+                public void edit(String recordID, String fieldName, String newValue) {
+                    Records record = store.get(recordID);
+                    if (record == null) return;
+                    RecordFields.Field field = RecordFields.lookup(record, fieldName);
+                    if (field == null) return;
+                    try {
+                        store.update(record, fieldName, () -> field.set(record, newValue));
+                    } catch (Exception e) {
+                        System.out.println("Skipped edit of " + recordID + " during recovery: " + e.getMessage());
+                    }
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot recover center " + centerName, e);
+        }
+        centerJournal.scheduleSnapshots(store, Long.getLong("dcms.snapshotMillis", 5 * 60 * 1000));
+        return centerJournal;
+    }
+
+    private void insertRecord(Records record) {
+        if (!store.add(record)) {
+            throw new IllegalStateException("Record ID " + record.getRecordID() + " is already in use");
+        }
+    }
+
+    private void addRecord(Records record) {
+        addRecords(Arrays.asList(record));
+    }
+
+    /*
+     * Adds the records with one journal append and one wait for the disk.
+     */
+    private void addRecords(List<? extends Records> records) {
+        if (journal == null) {
+            for (Records record : records) {
+                insertRecord(record);
             }
+            return;
+        }
+        try {
+            journal.awaitDurable(journal.logCreates(records, () -> {
+                for (Records record : records) {
+                    insertRecord(record);
+                }
+            }));
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not persist records starting at " + records.get(0).getRecordID(), e);
         }
     }
 
-    public String createTRecord(String managerId, String firstName, String lastName, String address, String phone, String specialization, String location) {
-        TeacherRecord teacherRecord = new TeacherRecord(firstName, lastName, address, phone, specialization, location);
-        char key = lastName.charAt(0);
-        validateRecordId(teacherRecord, key);
-        synchronized (this) {
-            if (database.get(key) == null) {
-                ArrayList<Records> value = new ArrayList<>();
-                value.add(teacherRecord);
-                database.put(key, value);
+    /*
+     * Sets one field, moving the record if its last-name initial or an indexed value changed.
+     * The edit is applied and logged under the record's monitor so replay sees edits in the same order.
+     * Returns the journal position the caller has to wait for before answering.
+     */
+    private long writeField(Records record, RecordFields.Field field, String newValue) throws Exception {
+        long[] position = new long[1];
+        store.update(record, field.getName(), () -> {
+            if (journal == null) {
+                field.set(record, newValue);
             } else {
-                ArrayList<Records> value = database.get(key);
-                value.add(teacherRecord);
-                database.put(key, value);
+                position[0] = journal.logEdit(record.getRecordID(), field.getName(), newValue, () -> field.set(record, newValue));
             }
+        });
+        return position[0];
+    }
+
+    private void awaitDurable(long position) throws except {
+        if (journal == null) return;
+        try {
+            journal.awaitDurable(position);
+        } catch (IOException e) {
+            throw new except("Could not persist edit: " + e.getMessage());
+        }
+    }
+
+    public String createTRecord(String managerId, String firstName, String lastName, String address, String phone, String specialization, String location) {
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            TeacherRecord teacherRecord = new TeacherRecord(idAllocator.nextTeacherId(), firstName, lastName, address, phone, specialization, location);
+            addRecord(teacherRecord);
+            Log.log(Log.getCurrentTime(), managerId, "createTRecord", "Create successfully! Record ID is " + teacherRecord.getRecordID());
+            succeeded = true;
+            return teacherRecord.getRecordID();
+        } finally {
+            createTRecordTimer.stop(start, succeeded);
         }
-        Log.log(Log.getCurrentTime(), managerId, "createTRecord", "Create successfully! Record ID is " + teacherRecord.getRecordID());
-        return teacherRecord.getRecordID();
     }
 
     public String createSRecord(String managerId, String firstName, String lastName, String[] courseRegistered, String status, String statusDate) {
-        StudentRecord studentRecord = new StudentRecord(firstName, lastName, courseRegistered, status, statusDate);
-        char key = lastName.charAt(0);
-        validateRecordId(studentRecord, key);
-        if (database.get(key) == null) {
-            ArrayList<Records> value = new ArrayList<>();
-            value.add(studentRecord);
-            database.put(key, value);
-        } else {
-            ArrayList<Records> value = database.get(key);
-            value.add(studentRecord);
-            database.put(key, value);
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            StudentRecord studentRecord = new StudentRecord(idAllocator.nextStudentId(), firstName, lastName, courseRegistered, status, statusDate);
+            addRecord(studentRecord);
+            Log.log(Log.getCurrentTime(), managerId, "createSRecord", "Create successfully! Record ID is " + studentRecord.getRecordID());
+            succeeded = true;
+            return studentRecord.getRecordID();
+        } finally {
+            createSRecordTimer.stop(start, succeeded);
         }
-        Log.log(Log.getCurrentTime(), managerId, "createSRecord", "Create successfully! Record ID is " + studentRecord.getRecordID());
-        return studentRecord.getRecordID();
     }
 
     public String getRecordCounts(String managerId) {
-        String result = "";
-        switch (managerId.substring(0, 3)) {
-            case "MTL": {
-                StringBuilder builder = new StringBuilder();
-                builder.append("MTL:");
-                builder.append(getLocalRecordCount());
-                builder.append("LVL:");
-                builder.append(UDPClient.request("getCount", host_name, 8181));
-                builder.append("DDO:");
-                builder.append(UDPClient.request("getCount", host_name, 8182));
-                result = builder.toString();
-                break;
-            }
-            case "LVL": {
-                StringBuilder builder = new StringBuilder();
-                builder.append("LVL:");
-                builder.append(getLocalRecordCount());
-                builder.append("MTL:");
-                builder.append(UDPClient.request("getCount", host_name, 8180));
-                builder.append("DDO:");
-                builder.append(UDPClient.request("getCount", host_name, 8182));
-                result = builder.toString();
-                break;
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            // counts pushed recently enough are used as they are; the other peers are queried at once, joining
+            // queries other calls already have in flight, and share one deadline, so the call takes as long as
+            // the slowest of them. Peers that are suspected down aren't asked at all; like peers that don't
+            // answer in time they are reported with their last known count marked stale, or as unavailable.
+            int timeout = peerTimeoutMillis;
+            long staleness = maxStalenessMillis;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            Map<String, CompletableFuture<Integer>> replies = new LinkedHashMap<>();
+            for (Map.Entry<String, InetSocketAddress> peer : peers.entrySet()) {
+                String name = peer.getKey();
+                Integer pushed = staleness > 0 ? peerCounts.count(name, staleness) : null;
+                if (pushed != null) {
+                    pushedCountsUsed.increment();
+                    replies.put(name, CompletableFuture.completedFuture(pushed));
+                } else if (!peerHealth.allow(name)) {
+                    replies.put(name, null);
+                } else {
+                    CompletableFuture<Integer> reply = countQueries.query(name, countTtlMillis, () -> {
+                        CompletableFuture<Integer> sent = peerClient().count(peer.getValue(), UDPMessage.ALL, timeout);
+                        sent.thenAccept(count -> peerCounts.answered(name, count));
+                        return sent;
+                    });
+                    // reported by every caller let through, whether it sent the query or joined one
+                    reply.whenComplete((count, failure) -> peerHealth.completed(name, failure));
+                    replies.put(name, reply);
+                }
             }
-            case "DDO": {
-                StringBuilder builder = new StringBuilder();
-                builder.append("DDO:");
-                builder.append(getLocalRecordCount());
-                builder.append("LVL:");
-                builder.append(UDPClient.request("getCount", host_name, 8181));
-                builder.append("MTL:");
-                builder.append(UDPClient.request("getCount", host_name, 8180));
-                result = builder.toString();
-                break;
+            StringBuilder builder = new StringBuilder();
+            builder.append(centerName).append(":");
+            builder.append(getLocalRecordCount());
+            for (Map.Entry<String, CompletableFuture<Integer>> reply : replies.entrySet()) {
+                Integer count = null;
+                if (reply.getValue() != null) {
+                    try {
+                        count = reply.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    } catch (Exception e) {
+                        // reported below
+                    }
+                }
+                builder.append(reply.getKey()).append(":");
+                if (count != null) {
+                    builder.append(count);
+                } else {
+                    Integer lastKnown = peerCounts.lastKnown(reply.getKey());
+                    builder.append(lastKnown == null ? UNAVAILABLE : lastKnown + STALE);
+                }
             }
+            String result = builder.toString();
+            System.out.printf("\n" + result);
+            Log.log(Log.getCurrentTime(), managerId, "getRecordCounts", "Successful");
+            succeeded = true;
+            return result;
+        } finally {
+            getRecordCountsTimer.stop(start, succeeded);
         }
-        System.out.printf("\n" + result);
-        Log.log(Log.getCurrentTime(), managerId, "getRecordCounts", "Successful");
-        return result;
     }
 
     public int getLocalRecordCount() {
-        int sum = 0;
-        for (ArrayList<Records> records :
-                database.values()) {
-            sum += records.size();
+        return store.size();
+    }
+
+    /*
+     * Records of one type, UDPMessage.ALL, TEACHERS or STUDENTS.
+     */
+    int getLocalRecordCount(byte type) {
+        switch (type) {
+            case UDPMessage.ALL: return store.size();
+            case UDPMessage.TEACHERS: return store.teacherCount();
+            case UDPMessage.STUDENTS: return store.studentCount();
+            default: throw new IllegalArgumentException("Unknown record type " + type);
         }
-        return sum;
+    }
+
+    boolean holds(String recordID) {
+        return store.get(recordID) != null;
+    }
+
+    /*
+     * The record for a peer's FETCH, or null when this center doesn't hold it.
+     */
+    RecordInfo recordInfo(String recordID) {
+        Records record = store.get(recordID);
+        return record == null ? null : toInfo(record);
     }
 
     public String editRecord(String managerId, String recordID, String fieldName, String newValue) throws except {
-        String result = "";
-        Boolean ableModified = true;
-        for (char key : database.keySet()) {
-            for (Records record : database.get(key)) {
-                if (record.getRecordID().equals(recordID)) {
-                    /* following reads information about the object, more precisely of its class, into BeanInfo
-                     not sure if in this particular case it will get proper specific class of record, eg Record.StudentRecord or
-                     Teacher record, it could take its superclass Record...
-                    */
-                    try {
-                        BeanInfo recordInfo = Introspector.getBeanInfo(record.getClass());
-
-                    /*
-                    recordPds in this case is the array of properties available in this class
-                     */
-                        PropertyDescriptor[] recordPds = recordInfo.getPropertyDescriptors();
-                        for (PropertyDescriptor prop : recordPds) {
-                            if (prop.getName().equals(fieldName)) {
-                                if (fieldName.equals("location")) {
-                                    ableModified = newValue.equals("MTL") || newValue.equals("LVL") || newValue.equals("DDO");
-                                }
-                            /*
-                            Here we form the statement to execute, in our case, update the field in the object.
-                            We rely on property names captured in previous recordPds. There is no need in explicit definition
-                            of particular Student of Record.TeacherRecord class, since we can just analyze whatever record found
-                            with recordId.
-                            prop.getWriteMethod() looks for method which writes to property, which was filtered with previous
-                            prop.getName().equals(fieldName). As a result newValue is passed as argument to method found, hopefully,
-                            it is the proper setter in the end.
-                            * look into java reflection and java beans library.
-                             */
-                                if (ableModified) {
-                                    Statement stmt = new Statement(record, prop.getWriteMethod().getName(), new Object[]{newValue});
-                                    stmt.execute();
-                                    result = "The value in " + fieldName + " is changed to " + newValue;
-                                    String operation = "edit: " + prop.getName();
-                                    Log.log(Log.getCurrentTime(), managerId, operation, result);
-                                    return result;
-                                } else {
-                                    String operation = "edit: " + prop.getName();
-                                    result = "The newValue is not valid!";
-                                    Log.log(Log.getCurrentTime(), managerId, operation, result);
-                                    return result;
-                                }
-                            }
-
-                        }
-                    } catch (Exception e) {
-                        except error = new except(e.getMessage());
-                        throw error;
-                    }
-                    result = "fieldName doesn't match record type";
-                    String operation = "edit: " + fieldName;
-                    Log.log(Log.getCurrentTime(), managerId, operation, result);
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            long[] position = new long[1];
+            String result = edit(recordID, fieldName, newValue, position);
+            awaitDurable(position[0]);
+            Log.log(Log.getCurrentTime(), managerId, "edit: " + fieldName, result);
+            succeeded = true;
+            return result;
+        } finally {
+            editRecordTimer.stop(start, succeeded);
+        }
+    }
+
+    /*
+     * Applies one edit and returns its result; the journal position to wait for is raised into position[0].
+     * The fields of each record class are resolved once in RecordFields, so finding the setter is a map lookup.
+     */
+    private String edit(String recordID, String fieldName, String newValue, long[] position) throws except {
+        Records record = store.get(recordID);
+        if (record == null) {
+            return "No such record Id for this manager";
+        }
+        RecordFields.Field field = RecordFields.lookup(record, fieldName);
+        if (field == null) {
+            return "fieldName doesn't match record type";
+        }
+        if (!field.isValid(newValue)) {
+            return "The newValue is not valid!";
+        }
+        if (!field.isEditable()) {
+            // rejected before it reaches the journal, which logs edits ahead of applying them
+            throw new except(fieldName + " can't be edited");
+        }
+        try {
+            position[0] = Math.max(position[0], writeField(record, field, newValue));
+        } catch (Exception e) {
+            except error = new except(e.getMessage());
+            throw error;
+        }
+        return "The value in " + fieldName + " is changed to " + newValue;
+    }
+
+    public String[] createTRecords(String managerId, TeacherInfo[] teachers) {
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            List<TeacherRecord> records = new ArrayList<>(teachers.length);
+            for (TeacherInfo teacher : teachers) {
+                records.add(new TeacherRecord(idAllocator.nextTeacherId(), teacher.firstName, teacher.lastName,
+                        teacher.address, teacher.phone, teacher.specialization, teacher.location));
+            }
+            String[] recordIDs = logCreated(managerId, "createTRecord", records);
+            succeeded = true;
+            return recordIDs;
+        } finally {
+            createTRecordsTimer.stop(start, succeeded);
+        }
+    }
+
+    public String[] createSRecords(String managerId, StudentInfo[] students) {
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            List<StudentRecord> records = new ArrayList<>(students.length);
+            for (StudentInfo student : students) {
+                records.add(new StudentRecord(idAllocator.nextStudentId(), student.firstName, student.lastName,
+                        student.courseRegistered, student.status, student.statusDate));
+            }
+            String[] recordIDs = logCreated(managerId, "createSRecord", records);
+            succeeded = true;
+            return recordIDs;
+        } finally {
+            createSRecordsTimer.stop(start, succeeded);
+        }
+    }
+
+    private String[] logCreated(String managerId, String operation, List<? extends Records> records) {
+        String[] recordIDs = new String[records.size()];
+        String[] operations = new String[records.size()];
+        String[] results = new String[records.size()];
+        if (!records.isEmpty()) {
+            addRecords(records);
+        }
+        for (int i = 0; i < recordIDs.length; i++) {
+            recordIDs[i] = records.get(i).getRecordID();
+            operations[i] = operation;
+            results[i] = "Create successfully! Record ID is " + recordIDs[i];
+        }
+        Log.log(Log.getCurrentTime(), managerId, operations, results);
+        return recordIDs;
+    }
+
+    /*
+     * Edits that raise except in editRecord report "Error: <reason>" here instead of failing the whole batch.
+     * If the applied edits can't be made durable, their results say so after the change they made; edits
+     * that failed or weren't applied keep their own result.
+     */
+    public String[] editRecords(String managerId, EditInfo[] edits) {
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            long[] position = new long[1];
+            String[] operations = new String[edits.length];
+            String[] results = new String[edits.length];
+            boolean[] applied = new boolean[edits.length];
+            for (int i = 0; i < edits.length; i++) {
+                operations[i] = "edit: " + edits[i].fieldName;
+                long before = position[0];
+                try {
+                    results[i] = edit(edits[i].recordID, edits[i].fieldName, edits[i].newValue, position);
+                } catch (except e) {
+                    results[i] = "Error: " + e.reason;
+                }
+                // only an edit written to the journal moves the position on
+                applied[i] = position[0] != before;
+            }
+            try {
+                awaitDurable(position[0]);
+            } catch (except e) {
+                for (int i = 0; i < edits.length; i++) {
+                    if (applied[i]) results[i] += " (" + e.reason + ")";
+                }
+            }
+            Log.log(Log.getCurrentTime(), managerId, operations, results);
+            succeeded = true;
+            return results;
+        } finally {
+            editRecordsTimer.stop(start, succeeded);
+        }
+    }
+
+    /*
+     * One page of the records whose fieldName holds value, read from the store's secondary index.
+     * Pages hold at most dcms.query.maxPageSize records whatever pageSize asks for; the cursor is the last
+     * record ID of the page, so records created or edited between calls are neither skipped nor repeated
+     * unless they move past it.
+     */
+    public RecordPage findRecords(String managerId, String fieldName, String value, String cursor, int pageSize) throws except {
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            if (!RecordStore.isSearchable(fieldName)) {
+                throw new except(fieldName + " can't be searched");
+            }
+            int limit = Math.max(1, Math.min(pageSize, maxPageSize));
+            List<Records> records = store.find(fieldName, value, cursor, limit);
+            RecordInfo[] infos = new RecordInfo[records.size()];
+            for (int i = 0; i < infos.length; i++) {
+                infos[i] = toInfo(records.get(i));
+            }
+            String nextCursor = infos.length == limit ? infos[limit - 1].recordID : "";
+            Log.log(Log.getCurrentTime(), managerId, "findRecords: " + fieldName + "=" + value,
+                    "Found " + infos.length + " records");
+            succeeded = true;
+            return new RecordPage(infos, nextCursor);
+        } finally {
+            findRecordsTimer.stop(start, succeeded);
+        }
+    }
+
+    /*
+     * One page of this center's records, see ExportCursor.
+     */
+    public RecordPage exportRecords(String managerId, String cursor, int pageSize) throws except {
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            RecordPage page = exportPage(cursor, pageSize);
+            Log.log(Log.getCurrentTime(), managerId, "exportRecords", "Exported " + page.records.length + " records");
+            succeeded = true;
+            return page;
+        } finally {
+            exportRecordsTimer.stop(start, succeeded);
+        }
+    }
+
+    private RecordPage exportPage(String cursorText, int pageSize) throws except {
+        ExportCursor cursor = openCursor(cursorText);
+        int limit = Math.max(1, Math.min(pageSize, maxPageSize));
+        List<RecordInfo> infos = new ArrayList<>(Math.min(limit, 64));
+        Records record;
+        while (infos.size() < limit && (record = cursor.next(store)) != null) {
+            infos.add(toInfo(record));
+        }
+        return new RecordPage(infos.toArray(new RecordInfo[0]), cursor.atEnd() ? "" : cursor.toString());
+    }
+
+    private ExportCursor openCursor(String cursorText) throws except {
+        try {
+            return ExportCursor.open(cursorText, idAllocator);
+        } catch (IllegalArgumentException e) {
+            throw new except(e.getMessage());
+        }
+    }
+
+    /*
+     * Export page for a peer's listAllRecords.
+     */
+    RecordPage exportForPeer(String cursorText, int pageSize) throws except {
+        return exportPage(cursorText, pageSize);
+    }
+
+    /*
+     * One page of the records of every center: this one first, then the peers in the order of the center table.
+     * The cursor is "<center>/<that center's export cursor>", so each center's export starts when the listing
+     * reaches it. Other centers' pages come over UDP as EXPORT replies, chunked when they outgrow a datagram, and a
+     * center that doesn't answer fails the call so it can be retried with the same cursor. Record IDs repeat
+     * across centers, so each record carries the name of the center it came from.
+     */
+    public RecordPage listAllRecords(String managerId, String cursor, int pageSize) throws except {
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            List<String> order = new ArrayList<>();
+            order.add(centerName);
+            order.addAll(peers.keySet());
+            String center = centerName;
+            String centerCursor = "";
+            if (!cursor.isEmpty()) {
+                int slash = cursor.indexOf('/');
+                center = slash < 0 ? "" : cursor.substring(0, slash);
+                centerCursor = cursor.substring(slash + 1);
+                if (!order.contains(center)) {
+                    throw new except("Not a listing cursor: " + cursor);
                 }
             }
+            RecordPage page = null;
+            // skip over centers that have nothing (left) to list
+            for (int i = order.indexOf(center); i < order.size(); i++, centerCursor = "") {
+                center = order.get(i);
+                page = center.equals(centerName) ? exportPage(centerCursor, pageSize)
+                        : peerPage(center, centerCursor, pageSize);
+                if (!page.nextCursor.isEmpty()) {
+                    page.nextCursor = center + "/" + page.nextCursor;
+                    break;
+                }
+                if (i + 1 < order.size()) {
+                    page.nextCursor = order.get(i + 1) + "/";
+                }
+                if (page.records.length > 0) break;
+            }
+            Log.log(Log.getCurrentTime(), managerId, "listAllRecords", "Listed " + page.records.length + " records of " + center);
+            succeeded = true;
+            return page;
+        } finally {
+            listAllRecordsTimer.stop(start, succeeded);
+        }
+    }
+
+    private RecordPage peerPage(String center, String centerCursor, int pageSize) throws except {
+        if (!peerHealth.allow(center)) {
+            throw new except("Center " + center + " is " + UNAVAILABLE);
+        }
+        try {
+            RecordPage page = peerClient().export(peers.get(center), centerCursor, pageSize, peerTimeoutMillis).get();
+            peerHealth.completed(center, null);
+            return page;
+        } catch (ExecutionException e) {
+            peerHealth.completed(center, e.getCause());
+            if (e.getCause() instanceof UDPClient.PeerError) {
+                throw new except(center + ": " + e.getCause().getMessage());
+            }
+            throw new except("Center " + center + " is " + UNAVAILABLE);
+        } catch (Exception e) {
+            peerHealth.completed(center, e);
+            throw new except("Center " + center + " is " + UNAVAILABLE);
+        }
+    }
+
+    private RecordInfo toInfo(Records record) {
+        synchronized (record) {
+            if (record instanceof TeacherRecord) {
+                TeacherRecord teacher = (TeacherRecord) record;
+                return new RecordInfo(teacher.getRecordID(), centerName, teacher.getFirstName(), teacher.getLastName(),
+                        teacher.getAddress(), teacher.getPhone(), teacher.getSpecialiazation(), teacher.getLocation(),
+                        new String[0], "", "");
+            }
+            StudentRecord student = (StudentRecord) record;
+            return new RecordInfo(student.getRecordID(), centerName, student.getFirstName(), student.getLastName(),
+                    "", "", "", "", student.getCoursesRegistered().toArray(new String[0]), student.getStatus(),
+                    student.getStatusDate());
         }
-        result = "No such record Id for this manager";
-        Log.log(Log.getCurrentTime(), managerId, "edit: " + fieldName, result);
-        return result;
     }
 
     public void shutdown() {
-        orb.shutdown(false);
+        peerCounts.stop();
+        if (journal != null) {
+            journal.close();
+        }
+        if (udpServer != null) {
+            udpServer.stopServer();
+        }
+        if (shutdownAction != null) {
+            shutdownAction.run();
+        } else {
+            orb.shutdown(false);
+        }
     }
 //    public void stopServer(){
 //        UDPClient.request("unregister:"+centerName,centerRegistryHost,centerRegistryUDPPort);
@@ -14,10 +14,12 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 
 public class Client {
+    private final CenterConfig centers = CenterConfig.fromSystemProperties();
+
     public static void main(String args[]) throws Exception {
 
         /*
-        using scanner get manager name, check if subs(0,3) within MTL LVL DDO
+        using scanner get manager name, check if its center prefix is a configured center
         set serverName based on that
         */
         /*
@@ -54,23 +56,8 @@ public class Client {
                 System.out.println("ManagerId error. Please input again");
                 continue;
             }
-            switch (managerId.substring(0, 3)) {
-                case "MTL": {
-                    service = CenterServiceHelper.narrow(ncRef.resolve_str("MTL"));
-                    ifContinue = processOperation(service,managerId);
-                    break;
-                }
-                case "LVL": {
-                    service = CenterServiceHelper.narrow(ncRef.resolve_str("LVL"));
-                    ifContinue = processOperation(service,managerId);
-                    break;
-                }
-                case "DDO": {
-                    service = CenterServiceHelper.narrow(ncRef.resolve_str("DDO"));
-                    ifContinue = processOperation(service,managerId);
-                    break;
-                }
-            }
+            service = CenterServiceHelper.narrow(ncRef.resolve_str(CenterConfig.centerOf(managerId)));
+            ifContinue = processOperation(service,managerId);
         } while (ifContinue);
     }
 
@@ -163,11 +150,7 @@ public class Client {
 
 
     public boolean verifyId(String managerId) throws Exception {
-        String addr = managerId.substring(0, 3);
-        if (addr.equals("MTL") || addr.equals("LVL") || addr.equals("DDO")) {
-            return true;
-        } else {
-            return false;
-        }
+        String addr = CenterConfig.centerOf(managerId);
+        return addr != null && centers.contains(addr);
     }
 }
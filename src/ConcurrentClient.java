@@ -7,19 +7,74 @@ import org.omg.CosNaming.NamingContextExtHelper;
 
 import java.io.*;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/*
+ * Replays operation.txt against the centers as a load driver. Operations run on a fixed pool of
+ * dcms.client.threads threads with at most dcms.client.maxInFlight outstanding at once; the file is
+ * replayed dcms.client.repeat times, skipping lines of managers outside dcms.centers. Lines naming an unknown
+ * operation or with too few fields for theirs are skipped, and counted in the report. The client waits for
+ * every result, then reports throughput and p50/p99/p999 latency per operation type.
+ * dcms.client.verbose=true also prints each result.
+ */
 public class ConcurrentClient {
+    private final int threads = Integer.getInteger("dcms.client.threads", 16);
+    private final int maxInFlight = Integer.getInteger("dcms.client.maxInFlight", 64);
+    private final int repeat = Integer.getInteger("dcms.client.repeat", 1);
+    private final boolean verbose = Boolean.getBoolean("dcms.client.verbose");
+    private final String operations = System.getProperty("dcms.client.operations", "src/operation.txt");
+    private final CenterConfig centers = CenterConfig.fromSystemProperties();
+
+    // one stub per center, resolved through the naming service the first time it is needed
+    private final Map<String, CenterService> stubs = new ConcurrentHashMap<>();
+    private final Map<String, Latencies> latencies = new ConcurrentHashMap<>();
+    private NamingContextExt ncRef;
+    private int malformed;
+
+    // fields of a line of each operation, manager ID and operation name included
+    private static final Map<String, Integer> FIELDS = new HashMap<>();
+
+    static {
+        FIELDS.put("createTRecord", 8);
+        FIELDS.put("createSRecord", 7);
+        FIELDS.put("getRecordCounts", 2);
+        FIELDS.put("editRecord", 5);
+    }
 
     public static void main(String[] args) throws Exception {
         new ConcurrentClient().scan(args);
     }
 
     public void scan(String[] args) throws Exception {
-        File file=new File("src/operation.txt");
-        InputStreamReader reader=new InputStreamReader(new FileInputStream(file));
-        BufferedReader input=new BufferedReader(reader);
-        String line=input.readLine();
+        List<String[]> lines = new ArrayList<>();
+        try (BufferedReader input = new BufferedReader(new InputStreamReader(new FileInputStream(new File(operations))))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = input.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) continue;
+                String[] parameters = line.split("\\|");
+                if (!verifyId(parameters[0])) continue;
+                Integer fields = parameters.length > 1 ? FIELDS.get(parameters[1]) : null;
+                if (fields == null || parameters.length < fields) {
+                    malformed++;
+                    System.out.println("Skipping line " + lineNumber + " of " + operations + ": " + line);
+                    continue;
+                }
+                lines.add(parameters);
+            }
+        }
 
         // create and initialize the ORB
         ORB orb = ORB.init(args, null);
@@ -28,104 +83,141 @@ public class ConcurrentClient {
                 orb.resolve_initial_references("NameService");
         // Use NamingContextExt instead of NamingContext,
         // part of the Interoperable naming Service.
-        NamingContextExt ncRef =
-                NamingContextExtHelper.narrow(objRef);
-
-        while (line!=null){
-            String[] parameters=line.split("\\|");
-            if (!verifyId(parameters[0])){
-                line=input.readLine();
-                continue;
+        ncRef = NamingContextExtHelper.narrow(objRef);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        long start = System.nanoTime();
+        int submitted = 0;
+        for (int round = 0; round < repeat; round++) {
+            for (String[] parameters : lines) {
+                Supplier<String> operation = operation(parameters);
+                if (operation == null) continue;
+                inFlight.acquire();
+                submitted++;
+                Latencies latency = latencies.computeIfAbsent(parameters[1], k -> new Latencies());
+                CompletableFuture.supplyAsync(() -> {
+                    long begin = System.nanoTime();
+                    try {
+                        String result = operation.get();
+                        latency.record(System.nanoTime() - begin);
+                        return result;
+                    } catch (RuntimeException e) {
+                        latency.error();
+                        throw e;
+                    }
+                }, executor).whenComplete((result, error) -> {
+                    inFlight.release();
+                    if (verbose) {
+                        System.out.println(parameters[1] + ": " + (error == null ? result : error.getCause()));
+                    }
+                });
             }
-            CenterService service= CenterServiceHelper.narrow(ncRef.resolve_str(parameters[0].substring(0,3)));
-            CompletableFuture<String> result;
-            switch (parameters[1]) {
-                case "createTRecord": {
-                    result=createTRecord(service,parameters);
-                    result.thenAccept(s-> System.out.println("Create Successful, recordId is "+s));
-                    break;
-                }
-                case "createSRecord": {
-                    result=createSRecord(service,parameters);
-                    result.thenAccept(s-> System.out.println("Create Successful, recordId is "+s));
-                    break;
-                }
-                case "getRecordCounts": {
-                    result=getRecordCounts(service,parameters[0]);
-                    result.thenAccept(s-> System.out.println("Record number is "+s));
-                    break;
-                }
-                case "editRecord": {
-                    result=editRecord(service, parameters);
-                    result.thenAccept(System.out::println);
-                    break;
-                }
-                case "Exit": {
-                    System.out.println("GoodBye.");
-                    break;
-                }
+        }
+        // every permit back means every operation has finished
+        inFlight.acquire(maxInFlight);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+        report(submitted, seconds);
+        orb.destroy();
+    }
+
+    private Supplier<String> operation(String[] parameters) {
+        String managerId = parameters[0];
+        switch (parameters[1]) {
+            case "createTRecord": {
+                String firstName = parameters[2];
+                String lastName = parameters[3];
+                String address = parameters[4];
+                String specialiazation = parameters[5];
+                String location = parameters[6];
+                String phone = parameters[7];
+                return () -> stub(managerId).createTRecord(managerId, firstName, lastName, address, phone, specialiazation, location);
+            }
+            case "createSRecord": {
+                String firstName = parameters[2];
+                String lastName = parameters[3];
+                String status = parameters[4];
+                String statusDate = parameters[5];
+                String[] coursesRegistered = parameters[6].split(" ");
+                return () -> stub(managerId).createSRecord(managerId, firstName, lastName, coursesRegistered, status, statusDate);
+            }
+            case "getRecordCounts": {
+                return () -> stub(managerId).getRecordCounts(managerId);
+            }
+            case "editRecord": {
+                String recordId = parameters[2];
+                String fieldName = parameters[3];
+                String newValue = parameters[4];
+                return () -> {
+                    try {
+                        return stub(managerId).editRecord(managerId, recordId, fieldName, newValue);
+                    } catch (except e) {
+                        throw new IllegalStateException(e.reason, e);
+                    }
+                };
             }
-            line=input.readLine();
+            default:
+                return null;
         }
     }
 
-    private CompletableFuture<String> createTRecord(CenterService stub, String[] parameters)  {
-        String firstName = parameters[2];
-        String lastName = parameters[3];
-        String address = parameters[4];
-        String specialiazation=parameters[5];
-        String location = parameters[6];
-        String phone =  parameters[7];
-        CompletableFuture<String> future=new CompletableFuture<>();
-        new Thread(()->{
-                String recordId=stub.createTRecord(parameters[0], firstName, lastName, address, phone, specialiazation, location);
-                future.complete(recordId);
-        }).start();
-        return future;
+    private CenterService stub(String managerId) {
+        return stubs.computeIfAbsent(CenterConfig.centerOf(managerId), center -> {
+            try {
+                return CenterServiceHelper.narrow(ncRef.resolve_str(center));
+            } catch (Exception e) {
+                throw new IllegalStateException("Cannot resolve center " + center, e);
+            }
+        });
     }
 
-    private CompletableFuture<String> createSRecord(CenterService stub, String[] parameters) {
-        String firstName = parameters[2];
-        String lastName = parameters[3];
-        String status = parameters[4];
-        String statusDate = parameters[5];
-        String[] coursesRegistered=parameters[6].split(" ");
-        CompletableFuture<String> future=new CompletableFuture<>();
-        new Thread(()->{
-                String recordId=stub.createSRecord(parameters[0], firstName, lastName, coursesRegistered, status, statusDate);
-                future.complete(recordId);
-        }).start();
-        return future;
+    private void report(int submitted, double seconds) {
+        System.out.printf("%d operations in %.2f s, %.1f ops/s%n", submitted, seconds, submitted / seconds);
+        if (malformed > 0) {
+            System.out.println(malformed + " malformed lines skipped");
+        }
+        for (Map.Entry<String, Latencies> entry : new TreeMap<>(latencies).entrySet()) {
+            Latencies latency = entry.getValue();
+            long[] sorted = latency.sorted();
+            System.out.printf("%-16s count %d, errors %d, p50 %.3f ms, p99 %.3f ms, p999 %.3f ms%n",
+                    entry.getKey(), sorted.length, latency.errors.get(),
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999));
+        }
     }
 
-    public CompletableFuture<String> getRecordCounts(CenterService stub, String managerId) {
-        CompletableFuture<String> future=new CompletableFuture<>();
-        new Thread(()->{
-                String counts=stub.getRecordCounts(managerId);
-                future.complete(counts);
-        }).start();
-        return future;
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
     }
 
-    private CompletableFuture<String> editRecord(CenterService stub, String[] parameters) throws Exception {
-        String recordId = parameters[2];
-        String fieldName = parameters[3];
-        String newValue = parameters[4];
-        CompletableFuture<String> future=new CompletableFuture<>();
-        new Thread(()->{
-            String result= null;
-            try {
-                result = stub.editRecord(parameters[0], recordId, fieldName, newValue);
-            } catch (CenterServer.CenterServicePackage.except except) {
-                except.printStackTrace();
+    // successful call latencies in nanoseconds plus the number of failed calls, of one operation type
+    private static class Latencies {
+        private long[] values = new long[1024];
+        private int size;
+        private final AtomicInteger errors = new AtomicInteger();
+
+        synchronized void record(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
             }
-                future.complete(result);
-        }).start();
-        return future;
+            values[size++] = nanos;
+        }
+
+        void error() {
+            errors.incrementAndGet();
+        }
+
+        synchronized long[] sorted() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
     }
 
     private boolean verifyId(String managerId) {
-        String addr = managerId.substring(0, 3);
-        return addr.equals("MTL") || addr.equals("LVL") || addr.equals("DDO");
+        String center = CenterConfig.centerOf(managerId);
+        return center != null && centers.contains(center);
     }
-}
\ No newline at end of file
+}
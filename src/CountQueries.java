@@ -0,0 +1,81 @@
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ * Live count queries to the peer centers, shared between concurrent getRecordCounts calls.
+ *
+ * A caller that needs a peer's count joins the query already in flight to that peer instead of sending its
+ * own, so a burst of calls sends one COUNT per peer. With ttlMillis > 0 a reply is also handed to the
+ * callers of the following ttlMillis. Failed queries are forgotten as soon as they fail, so the next caller
+ * asks again.
+ */
+public class CountQueries {
+    private final Map<String, Query> queries = new ConcurrentHashMap<>();
+    private final LongAdder requested = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+
+    private static class Query {
+        final CompletableFuture<Integer> reply = new CompletableFuture<>();
+        // set before reply completes, only for successful replies
+        volatile long completedNanos;
+
+        boolean shareable(long ttlNanos) {
+            if (!reply.isDone()) return true;
+            return completedNanos != 0 && System.nanoTime() - completedNanos <= ttlNanos;
+        }
+    }
+
+    /*
+     * The count of peer from the query in flight or answered within ttlMillis, or from a new one started by send.
+     */
+    public CompletableFuture<Integer> query(String peer, long ttlMillis, Supplier<CompletableFuture<Integer>> send) {
+        requested.increment();
+        long ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        while (true) {
+            Query current = queries.get(peer);
+            if (current != null && current.shareable(ttlNanos)) {
+                return current.reply;
+            }
+            Query query = new Query();
+            boolean owner = current == null ? queries.putIfAbsent(peer, query) == null
+                    : queries.replace(peer, current, query);
+            if (!owner) continue;
+            sent.increment();
+            CompletableFuture<Integer> reply;
+            try {
+                reply = send.get();
+            } catch (RuntimeException e) {
+                reply = new CompletableFuture<>();
+                reply.completeExceptionally(e);
+            }
+            reply.whenComplete((count, failure) -> {
+                if (failure != null) {
+                    queries.remove(peer, query);
+                    query.reply.completeExceptionally(failure);
+                } else {
+                    query.completedNanos = Math.max(1, System.nanoTime());
+                    query.reply.complete(count);
+                }
+            });
+            return query.reply;
+        }
+    }
+
+    /*
+     * Counts asked for, whether they were sent or shared.
+     */
+    public long requested() {
+        return requested.sum();
+    }
+
+    /*
+     * COUNT queries actually sent to peers.
+     */
+    public long sent() {
+        return sent.sum();
+    }
+}
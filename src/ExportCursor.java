@@ -0,0 +1,82 @@
+import Record.RecordIdAllocator;
+import Record.Records;
+
+/*
+ * Position of an export of one center's records.
+ *
+ * Record IDs come from per-type sequences, so the records that existed when an export started are exactly
+ * the IDs up to the two sequence high-water marks taken then. The cursor walks TR1..TR<teachers> and then
+ * SR1..SR<students>, looking each ID up in the store: it holds three numbers whatever the size of the center,
+ * takes no lock, and records created after the export started are never reached. Field values are the ones
+ * current when a page is read.
+ *
+ * A cursor given back by a client must be within what the allocator has handed out. One page looks at most
+ * MAX_SKIPPED IDs that are not in the store; a page stopped by that is short, and its cursor goes on from
+ * there.
+ *
+ * As text: "<teacher high-water>.<student high-water>.<position>".
+ */
+public class ExportCursor {
+    public static final int MAX_SKIPPED = 10000;
+
+    private final long teachers;
+    private final long students;
+    private long position;
+    private int skipped;
+
+    private ExportCursor(long teachers, long students, long position) {
+        this.teachers = teachers;
+        this.students = students;
+        this.position = position;
+    }
+
+    /*
+     * A cursor at the start of everything allocated so far, or the one written as text.
+     */
+    public static ExportCursor open(String text, RecordIdAllocator allocator) {
+        if (text.isEmpty()) {
+            return new ExportCursor(allocator.teacherHighWater(), allocator.studentHighWater(), 0);
+        }
+        String[] parts = text.split("\\.");
+        try {
+            if (parts.length == 3) {
+                ExportCursor cursor = new ExportCursor(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                        Long.parseLong(parts[2]));
+                if (cursor.teachers >= 0 && cursor.teachers <= allocator.teacherHighWater()
+                        && cursor.students >= 0 && cursor.students <= allocator.studentHighWater()
+                        && cursor.position >= 0 && cursor.position <= cursor.teachers + cursor.students) {
+                    return cursor;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Not an export cursor: " + text);
+    }
+
+    /*
+     * The next record of the export, or null when there is none left or this cursor skipped MAX_SKIPPED IDs.
+     */
+    public Records next(RecordStore store) {
+        while (position < teachers + students) {
+            long index = position++;
+            String recordID = index < teachers
+                    ? RecordIdAllocator.teacherId(index + 1) : RecordIdAllocator.studentId(index - teachers + 1);
+            Records record = store.get(recordID);
+            if (record != null) {
+                return record;
+            }
+            if (++skipped >= MAX_SKIPPED) break;
+        }
+        return null;
+    }
+
+    public boolean atEnd() {
+        return position >= teachers + students;
+    }
+
+    @Override
+    public String toString() {
+        return teachers + "." + students + "." + position;
+    }
+}
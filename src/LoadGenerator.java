@@ -0,0 +1,344 @@
+import CenterServer.CenterService;
+import CenterServer.CenterServiceHelper;
+import org.omg.CORBA.ORB;
+import org.omg.CosNaming.NamingContextExt;
+import org.omg.CosNaming.NamingContextExtHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Open-loop load test of a local deployment over CORBA.
+ *
+ * Starts orbd and one JVM per center of dcms.centers (unless dcms.load.startServers=false, then it uses what
+ * is already registered with the naming service), then offers load at each rate of dcms.load.rates (ops/s)
+ * for dcms.load.seconds. Requests are issued on a fixed schedule whether or not earlier ones have answered,
+ * and latency is measured from the moment a request was due, not from when a worker got to send it; a
+ * server that falls behind therefore shows its queueing delay in the percentiles instead of hiding it by
+ * slowing the client down (coordinated omission). Service time, measured from the actual send, is reported
+ * next to it.
+ *
+ * Load shape:
+ *   dcms.load.mix           operation weights, default createTRecord:30,createSRecord:30,editRecord:30,getRecordCounts:10
+ *   dcms.load.managers      manager IDs per center (default 100), picked with Zipf exponent dcms.load.managerSkew
+ *                           (default 0, uniform)
+ *   dcms.load.initialSkew   Zipf exponent of last-name initials A..Z for creates and lastName edits (default 0)
+ *   dcms.load.threads       client threads sending requests (default 64); dcms.load.maxOutstanding (default 10000)
+ *                           requests may be handed to them at once. A request that falls due while that many are
+ *                           outstanding is held back and sent as soon as one completes, and counted as delayed;
+ *                           its latency is still measured from when it was due, so the wait shows in the
+ *                           percentiles rather than dropping out of them
+ * Edits rename a record created earlier in this run at the same center.
+ *
+ * For every rate it prints achieved throughput and per operation count, errors and p50/p99/p999/max latency;
+ * at the end the saturation throughput: the best achieved rate of the steps that kept up with their target.
+ */
+public class LoadGenerator {
+    private static final String[] OPERATIONS = {"createTRecord", "createSRecord", "editRecord", "getRecordCounts"};
+
+    private final CenterConfig centers = CenterConfig.fromSystemProperties();
+    private final int orbPort = Integer.getInteger("dcms.load.orbPort", 1050);
+    private final int[] rates = Arrays.stream(System.getProperty("dcms.load.rates", "100,200,400,800").split(","))
+            .map(String::trim).mapToInt(Integer::parseInt).toArray();
+    private final int seconds = Integer.getInteger("dcms.load.seconds", 10);
+    private final int threads = Integer.getInteger("dcms.load.threads", 64);
+    private final int maxOutstanding = Integer.getInteger("dcms.load.maxOutstanding", 10000);
+    private final int managersPerCenter = Integer.getInteger("dcms.load.managers", 100);
+    private final Zipf managerChoice = new Zipf(centers.centers().size() * managersPerCenter,
+            Double.parseDouble(System.getProperty("dcms.load.managerSkew", "0")));
+    private final Zipf initialChoice = new Zipf(26, Double.parseDouble(System.getProperty("dcms.load.initialSkew", "0")));
+    private final double[] mix = mix(System.getProperty("dcms.load.mix",
+            "createTRecord:30,createSRecord:30,editRecord:30,getRecordCounts:10"));
+
+    private final List<String> centerNames = new ArrayList<>(centers.centers().keySet());
+    private final Map<String, CenterService> stubs = new ConcurrentHashMap<>();
+    // IDs created during the run, per center, for edits to pick from
+    private final Map<String, List<String>> created = new ConcurrentHashMap<>();
+    private final List<Process> processes = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator().run();
+    }
+
+    private void run() throws Exception {
+        if (Boolean.parseBoolean(System.getProperty("dcms.load.startServers", "true"))) {
+            startServers();
+        } else {
+            System.out.println("Using the centers already registered on port " + orbPort);
+        }
+        try {
+            ORB orb = ORB.init(new String[]{"-ORBInitialPort", String.valueOf(orbPort)}, null);
+            NamingContextExt naming = NamingContextExtHelper.narrow(orb.resolve_initial_references("NameService"));
+            awaitCenters(naming);
+            for (String center : centerNames) {
+                created.put(center, Collections.synchronizedList(new ArrayList<>()));
+            }
+
+            double saturation = 0;
+            for (int rate : rates) {
+                double achieved = step(rate);
+                if (achieved >= 0.95 * rate) {
+                    saturation = Math.max(saturation, achieved);
+                }
+            }
+            if (saturation > 0) {
+                System.out.printf("saturation throughput: %.1f ops/s%n", saturation);
+            } else {
+                System.out.println("saturation throughput: below every offered rate");
+            }
+            orb.destroy();
+        } finally {
+            stopServers();
+        }
+    }
+
+    /*
+     * Offers rate requests per second for the configured time and returns the completed requests per second.
+     */
+    private double step(int rate) throws InterruptedException {
+        Map<String, Metrics.Timer> latency = new LinkedHashMap<>();
+        Map<String, Metrics.Timer> service = new LinkedHashMap<>();
+        for (String operation : OPERATIONS) {
+            latency.put(operation, Metrics.timer("load." + rate + "." + operation));
+            service.put(operation, Metrics.timer("load." + rate + "." + operation + ".service"));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger outstanding = new AtomicInteger();
+        // due times of requests waiting for fewer than maxOutstanding to be in flight, oldest first
+        ArrayDeque<Long> backlog = new ArrayDeque<>();
+        long delayed = 0;
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long total = (long) rate * seconds;
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long due = start + i * interval;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            backlog.add(due);
+            while (!backlog.isEmpty() && outstanding.get() < maxOutstanding) {
+                send(executor, outstanding, backlog.poll(), latency, service);
+            }
+            if (!backlog.isEmpty()) {
+                delayed++;
+            }
+        }
+        while (!backlog.isEmpty()) {
+            if (outstanding.get() < maxOutstanding) {
+                send(executor, outstanding, backlog.poll(), latency, service);
+            } else {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            }
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long completed = 0;
+        for (Metrics.Timer timer : latency.values()) {
+            completed += timer.getCount();
+        }
+        double achieved = completed / elapsed;
+        System.out.printf("%nrate %d ops/s: achieved %.1f ops/s, %d delayed%n", rate, achieved, delayed);
+        System.out.printf("  %-16s %7s %6s %10s %10s %10s %10s %12s%n",
+                "operation", "count", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms", "service p99");
+        for (String operation : OPERATIONS) {
+            Metrics.Timer timer = latency.get(operation);
+            if (timer.getCount() == 0) continue;
+            System.out.printf("  %-16s %7d %6d %10.2f %10.2f %10.2f %10.2f %12.2f%n", operation,
+                    service.get(operation).getCount(), timer.getErrors(), timer.getP50Micros() / 1e3,
+                    timer.getP99Micros() / 1e3, timer.getP999Micros() / 1e3, timer.getMaxMicros() / 1e3,
+                    service.get(operation).getP99Micros() / 1e3);
+        }
+        return achieved;
+    }
+
+    /*
+     * Hands a request due at due to the executor, timing it into latency from due and into service from when
+     * a thread picks it up.
+     */
+    private void send(ExecutorService executor, AtomicInteger outstanding, long due,
+                      Map<String, Metrics.Timer> latency, Map<String, Metrics.Timer> service) {
+        String operation = OPERATIONS[pick(mix)];
+        outstanding.incrementAndGet();
+        executor.execute(() -> {
+            long sent = System.nanoTime();
+            boolean succeeded = false;
+            try {
+                succeeded = call(operation);
+            } catch (RuntimeException e) {
+                // a CORBA system exception; counted as an error
+            } finally {
+                latency.get(operation).stop(due, succeeded);
+                service.get(operation).stop(sent, succeeded);
+                outstanding.decrementAndGet();
+            }
+        });
+    }
+
+    /*
+     * Performs one operation for a randomly picked manager; false if the server reported a failure.
+     */
+    private boolean call(String operation) {
+        int manager = managerChoice.next();
+        String center = centerNames.get(manager % centerNames.size());
+        String managerId = String.format("%s%04d", center, manager / centerNames.size());
+        CenterService stub = stubs.get(center);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (operation) {
+            case "createTRecord":
+                created.get(center).add(stub.createTRecord(managerId, "first", lastName(), "address", "5140000000",
+                        "french", centerNames.get(random.nextInt(centerNames.size()))));
+                return true;
+            case "createSRecord":
+                created.get(center).add(stub.createSRecord(managerId, "first", lastName(),
+                        new String[]{"math", "french"}, "active", "2018-01-01"));
+                return true;
+            case "editRecord": {
+                List<String> ids = created.get(center);
+                if (ids.isEmpty()) {
+                    return call("createTRecord");
+                }
+                try {
+                    String result = stub.editRecord(managerId, ids.get(random.nextInt(ids.size())), "lastName", lastName());
+                    return result.startsWith("The value in");
+                } catch (CenterServer.CenterServicePackage.except e) {
+                    return false;
+                }
+            }
+            default:
+                return !stub.getRecordCounts(managerId).contains("unavailable");
+        }
+    }
+
+    private String lastName() {
+        return (char) ('A' + initialChoice.next()) + "name";
+    }
+
+    private void awaitCenters(NamingContextExt naming) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        for (String center : centerNames) {
+            while (!stubs.containsKey(center)) {
+                try {
+                    stubs.put(center, CenterServiceHelper.narrow(naming.resolve_str(center)));
+                } catch (Exception e) {
+                    if (System.nanoTime() > deadline) {
+                        throw new IllegalStateException("Center " + center + " did not register", e);
+                    }
+                    Thread.sleep(200);
+                }
+            }
+        }
+    }
+
+    /*
+     * Runs orbd and every center from a fresh work directory, so data and logs of earlier runs don't count.
+     */
+    private void startServers() throws IOException, InterruptedException {
+        File workDir = Files.createTempDirectory("dcms-load").toFile();
+        System.out.println("Servers run in " + workDir);
+        File javaHome = new File(System.getProperty("java.home"));
+        File orbd = new File(javaHome, "bin/orbd");
+        if (!orbd.exists()) {
+            orbd = new File(javaHome.getParentFile(), "bin/orbd");
+        }
+        processes.add(start(workDir, "orbd", Arrays.asList(orbd.getPath(), "-ORBInitialPort", String.valueOf(orbPort))));
+        Thread.sleep(1000);
+        StringBuilder spec = new StringBuilder();
+        centers.centers().forEach((name, address) -> spec.append(spec.length() == 0 ? "" : ",")
+                .append(name).append(':').append(address.getHostString()).append(':').append(address.getPort()));
+        for (String center : centerNames) {
+            List<String> command = new ArrayList<>(Arrays.asList(
+                    new File(javaHome, "bin/java").getPath(), "-cp", System.getProperty("java.class.path")));
+            for (String name : System.getProperties().stringPropertyNames()) {
+                if (name.startsWith("dcms.") && !name.startsWith("dcms.load.")) {
+                    command.add("-D" + name + "=" + System.getProperty(name));
+                }
+            }
+            command.addAll(Arrays.asList("CenterLauncher", "--centers", spec.toString(), "--start", center,
+                    "-ORBInitialPort", String.valueOf(orbPort)));
+            processes.add(start(workDir, center, command));
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stopServers));
+    }
+
+    private static Process start(File workDir, String name, List<String> command) throws IOException {
+        return new ProcessBuilder(command).directory(workDir).redirectErrorStream(true)
+                .redirectOutput(new File(workDir, name + ".out")).start();
+    }
+
+    private synchronized void stopServers() {
+        for (Process process : processes) {
+            process.destroy();
+        }
+        processes.clear();
+    }
+
+    private static double[] mix(String spec) {
+        double[] weights = new double[OPERATIONS.length];
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split(":");
+            int index = Arrays.asList(OPERATIONS).indexOf(parts[0]);
+            if (index < 0 || parts.length != 2) {
+                throw new IllegalArgumentException("Mix entries are operation:weight with operation one of "
+                        + Arrays.toString(OPERATIONS) + ", got " + entry);
+            }
+            weights[index] = Double.parseDouble(parts[1]);
+        }
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            weights[i] = sum;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] /= sum;
+        }
+        return weights;
+    }
+
+    private static int pick(double[] cumulative) {
+        double value = ThreadLocalRandom.current().nextDouble();
+        for (int i = 0; i < cumulative.length; i++) {
+            if (value < cumulative[i]) return i;
+        }
+        return cumulative.length - 1;
+    }
+
+    // index 0..n-1 with probability proportional to 1/(index+1)^exponent; exponent 0 is uniform
+    private static class Zipf {
+        private final double[] cumulative;
+
+        Zipf(int n, double exponent) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += 1 / Math.pow(i + 1, exponent);
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cumulative[i] /= sum;
+            }
+        }
+
+        int next() {
+            int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+            return Math.min(cumulative.length - 1, index < 0 ? -index - 1 : index);
+        }
+    }
+}
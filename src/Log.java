@@ -1,74 +1,242 @@
 import java.io.*;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/*
+ * Operation log. log() only puts the entry into a bounded queue; one writer thread drains it in batches,
+ * keeps the log files open and flushes them every flushMillis or once flushBytes have been written.
+ * What happens when the queue is full is chosen with dcms.log.overflow:
+ * BLOCK waits for room, DROP discards the entry, SAMPLE keeps one in every dcms.log.sampleEvery entries
+ * (waiting for room for those) and discards the rest.
+ * Once shutdown() has run nothing is queued any more: entries logged after it are counted as dropped, and a
+ * caller still waiting for room gives up, since no writer will make any.
+ */
 public class Log {
 
+    public enum OverflowPolicy { BLOCK, DROP, SAMPLE }
+
+    private static final DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final String LOG_DIR = "./log";
+    private static final int MAX_OPEN_FILES = 256;
+    private static final int MAX_BATCH = 1024;
+
+    private static final OverflowPolicy overflowPolicy =
+            OverflowPolicy.valueOf(System.getProperty("dcms.log.overflow", "BLOCK").toUpperCase());
+    private static final int sampleEvery = Integer.getInteger("dcms.log.sampleEvery", 100);
+    private static final long flushMillis = Long.getLong("dcms.log.flushMillis", 200);
+    private static final int flushBytes = Integer.getInteger("dcms.log.flushBytes", 64 * 1024);
+    private static final ArrayBlockingQueue<Entry> queue =
+            new ArrayBlockingQueue<>(Integer.getInteger("dcms.log.capacity", 8192));
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final AtomicLong overflowed = new AtomicLong();
+    private static volatile boolean closed = false;
+    private static final Thread writer = new Thread(Log::drain, "log-writer");
+    // time spent in log(), including any wait for room in the queue
+    private static final Metrics.Timer appendTimer = Metrics.timer("log.append");
+
+    static {
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::shutdown, "log-shutdown"));
+        Metrics.gauge("log.queueDepth", Log::queueDepth);
+        Metrics.gauge("log.dropped", Log::droppedCount);
+    }
+
+    // one or more lines of the same manager, queued and written together
+    private static class Entry {
+        final String time;
+        final String managerId;
+        final String[] operations;
+        final String[] results;
+
+        Entry(String time, String managerId, String[] operations, String[] results) {
+            this.time = time;
+            this.managerId = managerId;
+            this.operations = operations;
+            this.results = results;
+        }
+    }
+
     public static String getCurrentTime() {
-        Date date = new Date();
-        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-        String formattedDate = dateFormat.format(date);
-        return formattedDate;
+        return LocalDate.now().format(dateFormat);
     }
 
     public static void log(String time, String managerId, String operation, String result) {
-        File file = new File("./log");
-        if (!file.exists()) {
-            file.mkdir();
+        enqueue(new Entry(time, managerId, new String[]{operation}, new String[]{result}));
+    }
+
+    /*
+     * Logs the results of a batch call as one queue entry; operations[i] belongs to results[i].
+     */
+    public static void log(String time, String managerId, String[] operations, String[] results) {
+        enqueue(new Entry(time, managerId, operations, results));
+    }
+
+    private static void enqueue(Entry entry) {
+        long start = System.nanoTime();
+        try {
+            offer(entry);
+        } finally {
+            appendTimer.stop(start, true);
         }
-        File inforClientFile = new File("./log/" + managerId + ".txt");
-        File inforServerFile = new File("./log/" + managerId.substring(0, 3) + ".txt");
-
-        BufferedWriter clientBufferedWriter = null;
-        BufferedWriter serverBufferedWriter = null;
-        String clientInformation = time + " | " + operation + " | " + managerId.substring(0, 3) + "Server" + " | " + result + "\n";
-        String serverInformation = time + " | " + managerId + " | " + operation + " | " + result + "\n";
-        if (inforServerFile.exists()) {
-            try {
-                clientBufferedWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(inforServerFile,true)));
-                clientBufferedWriter.write(serverInformation);
-                clientBufferedWriter.flush();
-                clientBufferedWriter.close();
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
-            } catch (IOException e) {
-                e.printStackTrace();
+    }
+
+    private static void offer(Entry entry) {
+        if (closed) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (queue.offer(entry)) return;
+        switch (overflowPolicy) {
+            case DROP: {
+                dropped.incrementAndGet();
+                return;
             }
-        } else {
-            try {
-                inforServerFile.createNewFile();
-                clientBufferedWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(inforServerFile,true)));
-                clientBufferedWriter.write("time | managerId | operation | result\n"+serverInformation);
-                clientBufferedWriter.flush();
-                clientBufferedWriter.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+            case SAMPLE: {
+                if (overflowed.incrementAndGet() % sampleEvery != 0) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                break;
             }
         }
-        if (inforClientFile.exists()) {
-            try {
-                clientBufferedWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(inforClientFile,true)));
-                clientBufferedWriter.write(clientInformation);
-                clientBufferedWriter.flush();
-                clientBufferedWriter.close();
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
-            } catch (IOException e) {
-                e.printStackTrace();
+        try {
+            // woken up now and then to notice shutdown(), after which the queue may never drain
+            while (!closed) {
+                if (queue.offer(entry, 100, TimeUnit.MILLISECONDS)) return;
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dropped.incrementAndGet();
+    }
+
+    public static int queueDepth() {
+        return queue.size();
+    }
 
-        } else {
+    public static long droppedCount() {
+        return dropped.get();
+    }
+
+    /*
+     * Wakes the writer so it writes out whatever is queued and closes the files; also run as a shutdown hook.
+     */
+    public static void shutdown() {
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void drain() {
+        new File(LOG_DIR).mkdir();
+        // opened files, least recently used first; only the writer thread touches them
+        Map<String, Writer> files = new LinkedHashMap<String, Writer>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Writer> eldest) {
+                if (size() <= MAX_OPEN_FILES) return false;
+                close(eldest.getValue());
+                return true;
+            }
+        };
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        long unflushed = 0;
+        long lastFlush = System.nanoTime();
+        while (!closed || !queue.isEmpty()) {
             try {
-                inforClientFile.createNewFile();
-                clientBufferedWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(inforClientFile,true)));
-                clientBufferedWriter.write("time | operation | location | result\n"+clientInformation);
-                clientBufferedWriter.flush();
-                clientBufferedWriter.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+                Entry first = closed ? queue.poll() : queue.poll(flushMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                }
+            } catch (InterruptedException e) {
+                // shutdown() woke us up; the loop condition decides whether anything is left
+            }
+            for (Entry entry : batch) {
+                try {
+                    unflushed += write(files, entry);
+                } catch (RuntimeException e) {
+                    // one malformed entry (e.g. a manager ID too short to name a center) must not stop the writer
+                    System.out.println("Log entry of " + entry.managerId + " not written: " + e);
+                }
+            }
+            batch.clear();
+            if (unflushed > 0 && (unflushed >= flushBytes || closed
+                    || System.nanoTime() - lastFlush >= TimeUnit.MILLISECONDS.toNanos(flushMillis))) {
+                for (Writer file : files.values()) {
+                    flush(file);
+                }
+                unflushed = 0;
+                lastFlush = System.nanoTime();
             }
         }
+        for (Writer file : files.values()) {
+            close(file);
+        }
+    }
+
+    private static int write(Map<String, Writer> files, Entry entry) {
+        String managerId = entry.managerId;
+        String center = CenterConfig.centerOf(managerId);
+        // an ID too short to name a center still gets a server log of its own
+        if (center == null) center = managerId;
+        int written = 0;
+        for (int i = 0; i < entry.operations.length; i++) {
+            String clientInformation = entry.time + " | " + entry.operations[i] + " | " + center + "Server" + " | " + entry.results[i] + "\n";
+            String serverInformation = entry.time + " | " + managerId + " | " + entry.operations[i] + " | " + entry.results[i] + "\n";
+            append(files, LOG_DIR + "/" + center + ".txt", "time | managerId | operation | result\n", serverInformation);
+            append(files, LOG_DIR + "/" + managerId + ".txt", "time | operation | location | result\n", clientInformation);
+            written += clientInformation.length() + serverInformation.length();
+        }
+        return written;
+    }
+
+    private static void append(Map<String, Writer> files, String path, String header, String line) {
+        try {
+            Writer file = files.get(path);
+            if (file == null) {
+                File logFile = new File(path);
+                boolean exists = logFile.exists();
+                file = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logFile, true), StandardCharsets.UTF_8));
+                if (!exists) {
+                    file.write(header);
+                }
+                files.put(path, file);
+            }
+            file.write(line);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void flush(Writer file) {
+        try {
+            file.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void close(Writer file) {
+        try {
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
 }
@@ -0,0 +1,232 @@
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/*
+ * Process-wide registry of operation timers and gauges.
+ *
+ * A timer counts calls and failures and keeps a latency histogram with log-linear buckets: values below 16 ns
+ * are exact, larger ones land in one of 16 buckets per power of two, so any reported value is within 1/16
+ * (6.25%) of the true one. Recording is a few atomic increments on preallocated arrays and allocates nothing;
+ * callers look their timer up once and keep it.
+ *
+ * Timers and gauges are registered as MBeans under "dcms:type=Timer|Gauge,name=<name>". When dcms.metrics.port
+ * is set, a plain text report is also served on http://127.0.0.1:<port>/metrics.
+ */
+public class Metrics {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private static final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private static HttpServer httpServer;
+
+    public interface TimerMBean {
+        long getCount();
+
+        long getErrors();
+
+        double getMeanMicros();
+
+        double getP50Micros();
+
+        double getP99Micros();
+
+        double getP999Micros();
+
+        double getMaxMicros();
+    }
+
+    public interface GaugeMBean {
+        long getValue();
+    }
+
+    public static class Timer implements TimerMBean {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        /*
+         * Records the call started at startNanos (a System.nanoTime() value) as ending now.
+         */
+        public void stop(long startNanos, boolean succeeded) {
+            record(System.nanoTime() - startNanos);
+            if (!succeeded) {
+                errors.increment();
+            }
+        }
+
+        public void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            buckets.incrementAndGet(bucketOf(nanos));
+            count.increment();
+            totalNanos.add(nanos);
+            long max;
+            while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+                // lost a race with another larger value; try again
+            }
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public double getMeanMicros() {
+            long calls = count.sum();
+            return calls == 0 ? 0 : totalNanos.sum() / 1e3 / calls;
+        }
+
+        public double getP50Micros() {
+            return percentile(0.50) / 1e3;
+        }
+
+        public double getP99Micros() {
+            return percentile(0.99) / 1e3;
+        }
+
+        public double getP999Micros() {
+            return percentile(0.999) / 1e3;
+        }
+
+        public double getMaxMicros() {
+            return maxNanos.get() / 1e3;
+        }
+
+        /*
+         * Upper bound of the bucket holding the given quantile; the buckets are read without stopping writers,
+         * so the result may mix in calls recorded meanwhile.
+         */
+        long percentile(double quantile) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), maxNanos.get());
+                }
+            }
+            return maxNanos.get();
+        }
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+
+    /*
+     * The timer called name, created and registered on first use.
+     */
+    public static Timer timer(String name) {
+        return timers.computeIfAbsent(name, key -> {
+            Timer timer = new Timer();
+            register("Timer", key, new StandardMBean(timer, TimerMBean.class, false));
+            return timer;
+        });
+    }
+
+    /*
+     * Registers a gauge read by value whenever it is reported; a later gauge of the same name replaces it.
+     */
+    public static void gauge(String name, LongSupplier value) {
+        if (gauges.put(name, value) == null) {
+            GaugeMBean gauge = () -> gauges.get(name).getAsLong();
+            register("Gauge", name, new StandardMBean(gauge, GaugeMBean.class, false));
+        }
+    }
+
+    private static void register(String type, String name, StandardMBean mbean) {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(mbean, new ObjectName("dcms:type=" + type + ",name=" + ObjectName.quote(name)));
+        } catch (JMException e) {
+            System.err.println("Cannot register " + type + " " + name + " with JMX: " + e);
+        }
+    }
+
+    /*
+     * All timers and gauges as text, one per line, sorted by name; latencies in microseconds.
+     */
+    public static String report() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Timer> entry : new ConcurrentSkipListMap<>(timers).entrySet()) {
+            Timer timer = entry.getValue();
+            builder.append(String.format("%s count=%d errors=%d mean=%.1f p50=%.1f p99=%.1f p999=%.1f max=%.1f\n",
+                    entry.getKey(), timer.getCount(), timer.getErrors(), timer.getMeanMicros(),
+                    timer.getP50Micros(), timer.getP99Micros(), timer.getP999Micros(), timer.getMaxMicros()));
+        }
+        for (Map.Entry<String, LongSupplier> entry : new ConcurrentSkipListMap<>(gauges).entrySet()) {
+            builder.append(entry.getKey()).append(' ').append(entry.getValue().getAsLong()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /*
+     * Serves report() on the loopback interface at dcms.metrics.port, if set; only the first call starts a server.
+     */
+    public static synchronized void startHttpEndpoint() {
+        Integer port = Integer.getInteger("dcms.metrics.port");
+        if (port == null || httpServer != null) return;
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            System.err.println("Metrics endpoint not started on port " + port + ": " + e.getMessage());
+            return;
+        }
+        httpServer.createContext("/metrics", exchange -> {
+            byte[] body = report().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        httpServer.start();
+        System.out.println("Metrics on http://127.0.0.1:" + httpServer.getAddress().getPort() + "/metrics");
+    }
+
+    public static synchronized void stopHttpEndpoint() {
+        if (httpServer == null) return;
+        httpServer.stop(0);
+        httpServer = null;
+    }
+}
@@ -0,0 +1,217 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Thread pool for the JDK's built-in ORB. Its own pool (ThreadPoolImpl) starts a new worker whenever queued
+ * work outnumbers idle workers and never checks its maximum, so it grows without limit under load.
+ * Here every piece of ORB work runs on one executor of at most maxThreads workers that retire after
+ * idleTimeoutMillis; when all are busy, work waits in a queue of queueCapacity entries. Work that finds the
+ * queue full is run by the ORB thread that handed it over (usually the selector thread), which then stops
+ * reading new requests until it is done: the ORB can't be told work was refused, so dropping it would leave
+ * a connection unread forever.
+ *
+ * The JDK ORB has no supported property for any of this; the pool has to be installed through its thread
+ * pool SPI, com.sun.corba.se.spi.orbutil.threadpool, which is internal to the JDK. This class is the only
+ * place that touches it, and only at run time: the SPI interfaces are implemented with dynamic proxies and
+ * work items are run through method handles, so nothing is compiled against them, and install() returns
+ * false when the ORB doesn't have them.
+ */
+public class OrbThreadPool implements InvocationHandler {
+    private static final String NAME = "center-orb-pool";
+    private static final String SPI = "com.sun.corba.se.spi.orbutil.threadpool.";
+
+    private final ThreadPoolExecutor executor;
+    private final long idleTimeoutMillis;
+    private final Object pool;
+    private final MethodHandle doWork;
+    private final MethodHandle getName;
+    private final MethodHandle setEnqueueTime;
+    private final MethodHandle getEnqueueTime;
+    private final Class<?> noSuchWorkQueue;
+    private final AtomicInteger busy = new AtomicInteger();
+    private final AtomicLong added = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong totalQueueMillis = new AtomicLong();
+    private final AtomicLong totalWorkMillis = new AtomicLong();
+    private final LongAdder callerRuns = new LongAdder();
+
+    private OrbThreadPool(int maxThreads, int queueCapacity, long idleTimeoutMillis) throws ReflectiveOperationException {
+        Class<?> work = Class.forName(SPI + "Work");
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        this.doWork = lookup.findVirtual(work, "doWork", MethodType.methodType(void.class));
+        this.getName = lookup.findVirtual(work, "getName", MethodType.methodType(String.class));
+        this.setEnqueueTime = lookup.findVirtual(work, "setEnqueueTime", MethodType.methodType(void.class, long.class));
+        this.getEnqueueTime = lookup.findVirtual(work, "getEnqueueTime", MethodType.methodType(long.class));
+        this.noSuchWorkQueue = Class.forName(SPI + "NoSuchWorkQueueException");
+        // one object serves as the ORB's only pool and that pool's only work queue
+        this.pool = Proxy.newProxyInstance(OrbThreadPool.class.getClassLoader(),
+                new Class<?>[]{Class.forName(SPI + "ThreadPool"), Class.forName(SPI + "WorkQueue")}, this);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(maxThreads, maxThreads, idleTimeoutMillis, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, NAME + "-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, (r, executor) -> {
+                    callerRuns.increment();
+                    if (!executor.isShutdown()) r.run();
+                });
+        executor.allowCoreThreadTimeOut(true);
+        Metrics.gauge("orb.queueDepth", () -> executor.getQueue().size());
+        Metrics.gauge("orb.busyThreads", busy::get);
+        Metrics.gauge("orb.callerRuns", callerRuns::sum);
+    }
+
+    /*
+     * Installs the pool on orb; returns false if orb isn't the JDK ORB or its thread pool SPI is missing.
+     */
+    public static boolean install(org.omg.CORBA.ORB orb, int maxThreads, int queueCapacity, long idleTimeoutMillis) {
+        try {
+            Class<?> managerType = Class.forName(SPI + "ThreadPoolManager");
+            Method setThreadPoolManager = orb.getClass().getMethod("setThreadPoolManager", managerType);
+            OrbThreadPool threadPool = new OrbThreadPool(maxThreads, queueCapacity, idleTimeoutMillis);
+            Object manager = Proxy.newProxyInstance(OrbThreadPool.class.getClassLoader(), new Class<?>[]{managerType},
+                    threadPool::manage);
+            setThreadPoolManager.invoke(orb, manager);
+            return true;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.out.println("ORB " + orb.getClass().getName() + " keeps its own thread pool: " + e);
+            return false;
+        }
+    }
+
+    /*
+     * The ThreadPoolManager: every id names the one pool.
+     */
+    private Object manage(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getThreadPool":
+            case "getDefaultThreadPool":
+                return pool;
+            case "getThreadPoolNumericId":
+                return 0;
+            case "getThreadPoolStringId":
+                return NAME;
+            case "getThreadPoolChooser":
+            case "setThreadPoolChooser":
+                // one pool serves every component
+                return null;
+            case "getThreadPoolChooserNumericId":
+                return -1;
+            case "close":
+                executor.shutdownNow();
+                return null;
+            default:
+                return objectMethod(proxy, method, args);
+        }
+    }
+
+    /*
+     * The ThreadPool and WorkQueue.
+     */
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "addWork":
+                addWork(args[0]);
+                return null;
+            case "getAnyWorkQueue":
+            case "getThreadPool":
+                return pool;
+            case "getWorkQueue":
+                if ((Integer) args[0] != 0) throw (Throwable) noSuchWorkQueue.newInstance();
+                return pool;
+            case "setThreadPool":
+                // the queue belongs to this pool only
+                return null;
+            case "numberOfWorkQueues":
+                return 1;
+            case "minimumNumberOfThreads":
+                return 0;
+            case "maximumNumberOfThreads":
+                return executor.getMaximumPoolSize();
+            case "idleTimeoutForThreads":
+                return idleTimeoutMillis;
+            case "currentNumberOfThreads":
+                return executor.getPoolSize();
+            case "numberOfAvailableThreads":
+                return Math.max(0, executor.getPoolSize() - busy.get());
+            case "numberOfBusyThreads":
+                return busy.get();
+            case "currentProcessedCount":
+                return processed.get();
+            case "averageWorkCompletionTime": {
+                long count = processed.get();
+                return count == 0 ? 0L : totalWorkMillis.get() / count;
+            }
+            case "getName":
+                return NAME;
+            case "totalWorkItemsAdded":
+                return added.get();
+            case "workItemsInQueue":
+                return executor.getQueue().size();
+            case "averageTimeInQueue": {
+                long count = processed.get();
+                return count == 0 ? 0L : totalQueueMillis.get() / count;
+            }
+            case "close":
+                executor.shutdownNow();
+                return null;
+            default:
+                return objectMethod(proxy, method, args);
+        }
+    }
+
+    private void addWork(Object work) throws Throwable {
+        added.incrementAndGet();
+        setEnqueueTime.invoke(work, System.currentTimeMillis());
+        executor.execute(() -> run(work));
+    }
+
+    private void run(Object work) {
+        long start = System.currentTimeMillis();
+        busy.incrementAndGet();
+        try {
+            totalQueueMillis.addAndGet(start - (long) getEnqueueTime.invoke(work));
+            doWork.invoke(work);
+        } catch (Throwable t) {
+            System.err.println(NAME + ": " + name(work) + " failed: " + t);
+        } finally {
+            busy.decrementAndGet();
+            totalWorkMillis.addAndGet(System.currentTimeMillis() - start);
+            processed.incrementAndGet();
+        }
+    }
+
+    private String name(Object work) {
+        try {
+            return (String) getName.invoke(work);
+        } catch (Throwable t) {
+            return String.valueOf(work);
+        }
+    }
+
+    private static Object objectMethod(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return NAME;
+            default:
+                throw new UnsupportedOperationException(method.toString());
+        }
+    }
+}
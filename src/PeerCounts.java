@@ -0,0 +1,150 @@
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/*
+ * Record counts of the peer centers as last pushed by them, so getRecordCounts can answer from memory.
+ *
+ * Every center sends a COUNT_DIGEST (center, records, boot, sequence, pushMillis) to each peer every
+ * pushMillis, as a datagram that gets no reply. The receiving side keeps the newest digest of each known peer
+ * with the time it arrived; boot tells a restarted sender's sequence numbers apart from the old ones, and older
+ * sequence numbers of the same boot (reordered datagrams) are ignored.
+ */
+public class PeerCounts {
+    private final String centerName;
+    private final Map<String, InetSocketAddress> peers;
+    private final IntSupplier localCount;
+    private final long boot = new Random().nextLong() & Long.MAX_VALUE;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Digest> digests = new ConcurrentHashMap<>();
+    private final Map<String, Integer> lastKnown = new ConcurrentHashMap<>();
+    private ScheduledExecutorService pusher;
+    private long pushMillis;
+
+    private static class Digest {
+        final int count;
+        final long boot;
+        final long sequence;
+        final long pushMillis;
+        final long receivedNanos;
+
+        Digest(int count, long boot, long sequence, long pushMillis, long receivedNanos) {
+            this.count = count;
+            this.boot = boot;
+            this.sequence = sequence;
+            this.pushMillis = pushMillis;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+
+    public PeerCounts(String centerName, Map<String, InetSocketAddress> peers, IntSupplier localCount) {
+        this.centerName = centerName;
+        this.peers = peers;
+        this.localCount = localCount;
+    }
+
+    /*
+     * Starts pushing this center's count every pushMillis; 0 or less pushes nothing.
+     */
+    public synchronized void start(long pushMillis) {
+        if (pushMillis <= 0 || pusher != null || peers.isEmpty()) return;
+        this.pushMillis = pushMillis;
+        pusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "count-push-" + centerName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        pusher.scheduleWithFixedDelay(this::push, 0, pushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (pusher != null) {
+            pusher.shutdownNow();
+            pusher = null;
+        }
+    }
+
+    private void push() {
+        int count = localCount.getAsInt();
+        long sent = sequence.incrementAndGet();
+        long period = pushMillis;
+        try {
+            UDPClient client = UDPClient.shared();
+            for (InetSocketAddress peer : peers.values()) {
+                client.post(UDPMessage.COUNT_DIGEST, buffer -> {
+                    UDPMessage.putString(buffer, centerName);
+                    buffer.putInt(count).putLong(boot).putLong(sent).putLong(period);
+                }, peer);
+            }
+        } catch (Exception e) {
+            // the peers keep the previous digest and fall back to live queries once it is too old
+            System.out.println("Count digest of " + centerName + " not sent: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Takes in the payload of a digest received from a peer and returns the peer's name; digests of unknown
+     * centers or cut short are ignored and give null.
+     */
+    public String receive(ByteBuffer payload) {
+        String center;
+        Digest digest;
+        try {
+            center = UDPMessage.getString(payload);
+            digest = new Digest(payload.getInt(), payload.getLong(), payload.getLong(), payload.getLong(),
+                    System.nanoTime());
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+        if (!peers.containsKey(center)) return null;
+        Digest kept = digests.merge(center, digest, (old, latest) ->
+                latest.boot == old.boot && latest.sequence <= old.sequence ? old : latest);
+        if (kept == digest) {
+            lastKnown.put(center, digest.count);
+        }
+        return center;
+    }
+
+    /*
+     * The push period center stated in its newest digest, 0 if none arrived.
+     */
+    public long pushMillis(String center) {
+        Digest digest = digests.get(center);
+        return digest == null ? 0 : digest.pushMillis;
+    }
+
+    /*
+     * A count center gave in reply to a live query.
+     */
+    public void answered(String center, int count) {
+        if (peers.containsKey(center)) {
+            lastKnown.put(center, count);
+        }
+    }
+
+    /*
+     * The last count pushed by center if it arrived within maxStalenessMillis, otherwise null.
+     */
+    public Integer count(String center, long maxStalenessMillis) {
+        Digest digest = digests.get(center);
+        if (digest == null || System.nanoTime() - digest.receivedNanos > TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis)) {
+            return null;
+        }
+        return digest.count;
+    }
+
+    /*
+     * The newest count heard from center, pushed or answered, however old; null if none was ever heard.
+     */
+    public Integer lastKnown(String center) {
+        return lastKnown.get(center);
+    }
+}
@@ -0,0 +1,177 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Whether the peer centers are worth asking: a phi-accrual failure detector fed by their count digests, and a
+ * circuit breaker around the calls made to them.
+ *
+ * The detector keeps the last WINDOW intervals between a peer's digests and suspects the peer once phi, the
+ * -log10 of the probability that a digest is still on its way after this long, exceeds dcms.peers.phiThreshold
+ * (default 8, Infinity turns the detector off). Intervals are treated as normally distributed with a standard deviation of at least
+ * dcms.peers.minStdDevMillis (default 100), so a perfectly regular sender isn't suspected the moment a digest
+ * is a little late. Until a peer's intervals are measured, the push period it states in its digests stands in
+ * for them. Peers that never pushed a digest, e.g. with pushes off, are judged by the breaker alone.
+ *
+ * The breaker opens after dcms.peers.breakerFailures (default 3) calls in a row failed to get an answer and
+ * stays open for dcms.peers.breakerOpenMillis (default 5000); then a single call is let through, and its
+ * outcome closes or reopens it. A trial whose outcome isn't reported within dcms.peers.trialTimeoutMillis
+ * (default 10000) counts as failed, so a lost trial can't keep the breaker half open. A peer that answers
+ * with an error is alive, so that counts as a success.
+ *
+ * While a peer is suspected or its breaker is open, allow() says no and callers fail fast instead of waiting
+ * out a timeout.
+ */
+public class PeerHealth {
+    private static final int WINDOW = 100;
+
+    private static final int CLOSED = 0;
+    private static final int OPEN = 1;
+    private static final int HALF_OPEN = 2;
+
+    private final double phiThreshold = Double.parseDouble(System.getProperty("dcms.peers.phiThreshold", "8"));
+    private final long minStdDevNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("dcms.peers.minStdDevMillis", 100));
+    private final int breakerFailures = Integer.getInteger("dcms.peers.breakerFailures", 3);
+    private final long breakerOpenNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("dcms.peers.breakerOpenMillis", 5000));
+    private final long trialTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("dcms.peers.trialTimeoutMillis", 10000));
+    private final Map<String, Peer> peers = new HashMap<>();
+    private final LongAdder fastFails = new LongAdder();
+
+    private final class Peer {
+        // heartbeat intervals, a ring of the last WINDOW
+        private final long[] intervals = new long[WINDOW];
+        private int intervalCount;
+        private int next;
+        private long sum;
+        private long sumOfSquares;
+        private long lastHeartbeatNanos;
+
+        private int state = CLOSED;
+        private int consecutiveFailures;
+        private long openedNanos;
+        private long trialNanos;
+
+        synchronized void heartbeat(long now, long expectedIntervalNanos) {
+            if (lastHeartbeatNanos == 0 && expectedIntervalNanos > 0) {
+                // no interval yet: start from the push period so the first missing digest is noticed
+                add(expectedIntervalNanos);
+            } else if (lastHeartbeatNanos != 0) {
+                add(now - lastHeartbeatNanos);
+            }
+            lastHeartbeatNanos = now;
+        }
+
+        private void add(long interval) {
+            if (intervalCount == WINDOW) {
+                sum -= intervals[next];
+                sumOfSquares -= intervals[next] / 1000 * (intervals[next] / 1000);
+            } else {
+                intervalCount++;
+            }
+            intervals[next] = interval;
+            next = (next + 1) % WINDOW;
+            sum += interval;
+            // squares in microseconds, nanoseconds would overflow after a few seconds
+            sumOfSquares += interval / 1000 * (interval / 1000);
+        }
+
+        synchronized double phi(long now) {
+            if (intervalCount == 0) return 0;
+            double mean = (double) sum / intervalCount;
+            double meanMicros = mean / 1000;
+            double variance = Math.max(0, (double) sumOfSquares / intervalCount - meanMicros * meanMicros);
+            double stdDev = Math.max(minStdDevNanos, Math.sqrt(variance) * 1000);
+            double y = (now - lastHeartbeatNanos - mean) / stdDev;
+            // logistic approximation of the normal distribution's tail
+            double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+            double tail = y > 0 ? e / (1 + e) : 1 - 1 / (1 + e);
+            return tail <= 0 ? Double.MAX_VALUE : -Math.log10(tail);
+        }
+
+        synchronized boolean allow(long now) {
+            if (state == HALF_OPEN && now - trialNanos >= trialTimeoutNanos) {
+                // the trial never reported back
+                state = OPEN;
+                openedNanos = now;
+            }
+            if (state == OPEN && now - openedNanos >= breakerOpenNanos) {
+                // this caller is the trial
+                state = HALF_OPEN;
+                trialNanos = now;
+                return true;
+            }
+            return state == CLOSED;
+        }
+
+        synchronized void success() {
+            consecutiveFailures = 0;
+            state = CLOSED;
+        }
+
+        synchronized void failure(long now) {
+            consecutiveFailures++;
+            if (state == HALF_OPEN || consecutiveFailures >= breakerFailures) {
+                state = OPEN;
+                openedNanos = now;
+            }
+        }
+
+        synchronized int state() {
+            return state;
+        }
+    }
+
+    public PeerHealth(String centerName, Iterable<String> peerNames) {
+        for (String name : peerNames) {
+            Peer peer = new Peer();
+            peers.put(name, peer);
+            Metrics.gauge(centerName + ".peer." + name + ".suspected", () -> suspected(name) ? 1 : 0);
+            Metrics.gauge(centerName + ".peer." + name + ".breaker", peer::state);
+        }
+        Metrics.gauge(centerName + ".peer.fastFails", fastFails::sum);
+    }
+
+    /*
+     * A digest arrived from peer; expectedIntervalMillis is the push period it states, used until intervals are
+     * measured.
+     */
+    public void heartbeat(String peer, long expectedIntervalMillis) {
+        Peer state = peers.get(peer);
+        if (state != null) {
+            state.heartbeat(System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(expectedIntervalMillis));
+        }
+    }
+
+    public boolean suspected(String peer) {
+        Peer state = peers.get(peer);
+        return state != null && state.phi(System.nanoTime()) > phiThreshold;
+    }
+
+    /*
+     * Whether a call to peer should be made now; a caller told no should fail fast, a caller told yes must
+     * report how the call ended with completed, whichever way it ends.
+     */
+    public boolean allow(String peer) {
+        Peer state = peers.get(peer);
+        if (state == null) return true;
+        long now = System.nanoTime();
+        if (state.phi(now) <= phiThreshold && state.allow(now)) return true;
+        fastFails.increment();
+        return false;
+    }
+
+    /*
+     * Records how a call to peer ended: failure null when it answered, else why it didn't.
+     */
+    public void completed(String peer, Throwable failure) {
+        Peer state = peers.get(peer);
+        if (state == null) return;
+        if (failure == null || failure instanceof UDPClient.PeerError
+                || failure.getCause() instanceof UDPClient.PeerError) {
+            state.success();
+        } else {
+            state.failure(System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package Record;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/*
+ * Editable fields of each record class, resolved once per class: the bean properties found by the Introspector,
+ * each with a method handle to its String setter and a validator for new values.
+ * Properties without such a setter (recordID, class, specialiazation, coursesRegistered) are listed too,
+ * so naming them is still an error rather than an unknown field.
+ */
+public class RecordFields {
+    // valid values of a location field
+    private static volatile Set<String> centers = new HashSet<>(Arrays.asList("MTL", "LVL", "DDO"));
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Records.class, String.class);
+
+    private static final ClassValue<Map<String, Field>> tables = new ClassValue<Map<String, Field>>() {
+        @Override
+        protected Map<String, Field> computeValue(Class<?> type) {
+            return resolve(type);
+        }
+    };
+
+    public static class Field {
+        private final String name;
+        private final MethodHandle setter;
+        private final Predicate<String> validator;
+
+        Field(String name, MethodHandle setter, Predicate<String> validator) {
+            this.name = name;
+            this.setter = setter;
+            this.validator = validator;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isEditable() {
+            return setter != null;
+        }
+
+        public boolean isValid(String newValue) {
+            return validator.test(newValue);
+        }
+
+        public void set(Records record, String newValue) throws Exception {
+            if (setter == null) {
+                throw new IllegalArgumentException(name + " can't be edited");
+            }
+            try {
+                setter.invokeExact(record, newValue);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+    }
+
+    /*
+     * Replaces the centers a location may name, for deployments configured with other centers.
+     */
+    public static void setCenters(Collection<String> centerNames) {
+        centers = new HashSet<>(centerNames);
+    }
+
+    /*
+     * Field of the record's class called name, or null if the class has no such property.
+     */
+    public static Field lookup(Records record, String name) {
+        return tables.get(record.getClass()).get(name);
+    }
+
+    private static Map<String, Field> resolve(Class<?> type) {
+        Map<String, Field> fields = new HashMap<>();
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        try {
+            for (PropertyDescriptor prop : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+                Method writeMethod = prop.getWriteMethod();
+                MethodHandle setter = null;
+                if (writeMethod != null && writeMethod.getParameterTypes()[0] == String.class) {
+                    setter = lookup.unreflect(writeMethod).asType(SETTER_TYPE);
+                }
+                Predicate<String> validator = prop.getName().equals("location") ? value -> centers.contains(value) : value -> true;
+                fields.put(prop.getName(), new Field(prop.getName(), setter, validator));
+            }
+        } catch (IntrospectionException | IllegalAccessException e) {
+            throw new IllegalStateException("Cannot resolve fields of " + type.getName(), e);
+        }
+        return Collections.unmodifiableMap(fields);
+    }
+}
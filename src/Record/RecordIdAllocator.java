@@ -0,0 +1,78 @@
+package Record;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Hands out record IDs of one center from per-type atomic sequences, so an ID is unique the moment it is
+ * allocated and nothing has to be scanned or retried.
+ * IDs keep the TR#####/SR##### shape: the prefix followed by the sequence number zero-padded to five digits.
+ * Past 99999 the number simply grows wider (TR100000, ...), which keeps IDs unique and ordered per type.
+ */
+public class RecordIdAllocator {
+    public static final String TEACHER_PREFIX = "TR";
+    public static final String STUDENT_PREFIX = "SR";
+    private static final int MIN_DIGITS = 5;
+
+    private final AtomicLong teacherSeq = new AtomicLong();
+    private final AtomicLong studentSeq = new AtomicLong();
+
+    public String nextTeacherId() {
+        return format(TEACHER_PREFIX, teacherSeq.incrementAndGet());
+    }
+
+    public String nextStudentId() {
+        return format(STUDENT_PREFIX, studentSeq.incrementAndGet());
+    }
+
+    /*
+     * Highest sequence numbers handed out so far; every ID of that type up to it has been allocated.
+     */
+    public long teacherHighWater() {
+        return teacherSeq.get();
+    }
+
+    public long studentHighWater() {
+        return studentSeq.get();
+    }
+
+    public static String teacherId(long seq) {
+        return format(TEACHER_PREFIX, seq);
+    }
+
+    public static String studentId(long seq) {
+        return format(STUDENT_PREFIX, seq);
+    }
+
+    /*
+     * Moves the matching sequence past an ID that already exists, e.g. one recovered from disk.
+     */
+    public void advancePast(String recordID) {
+        AtomicLong seq = recordID.startsWith(TEACHER_PREFIX) ? teacherSeq
+                : recordID.startsWith(STUDENT_PREFIX) ? studentSeq : null;
+        if (seq == null) return;
+        long value;
+        try {
+            value = Long.parseLong(recordID.substring(2));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        long current;
+        while ((current = seq.get()) < value && !seq.compareAndSet(current, value)) {
+            // lost a race with another allocation or recovery thread, try again
+        }
+    }
+
+    static String format(String prefix, long seq) {
+        int digits = MIN_DIGITS;
+        for (long limit = 100000; seq >= limit && digits < 19; limit *= 10) {
+            digits++;
+        }
+        char[] chars = new char[prefix.length() + digits];
+        prefix.getChars(0, prefix.length(), chars, 0);
+        for (int i = chars.length - 1; i >= prefix.length(); i--) {
+            chars[i] = (char) ('0' + seq % 10);
+            seq /= 10;
+        }
+        return new String(chars);
+    }
+}
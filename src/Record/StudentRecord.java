@@ -2,7 +2,6 @@ package Record;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Random;
 
 public class StudentRecord extends Records implements Serializable {
 
@@ -22,21 +21,6 @@ public class StudentRecord extends Records implements Serializable {
         return status;
     }
 
-    @Override
-    public String genRecordID(){
-        String recordId = "SR";
-        String chars = "1234567890";
-        while (recordId.length()<7){
-            recordId+=new Random().nextInt(9);
-        }
-        return recordId;
-    }
-
-    @Override
-    public void regenRecordID() {
-        this.recordID = genRecordID();
-    }
-
     public synchronized void setStatus(String status) {
         this.status = status;
     }
@@ -49,9 +33,8 @@ public class StudentRecord extends Records implements Serializable {
         this.statusDate = statusDate;
     }
 
-    public StudentRecord(String firstName, String lastName, String[] coursesRegistered, String status, String statusDate) {
-        super(firstName, lastName);
-        this.recordID = genRecordID();
+    public StudentRecord(String recordID, String firstName, String lastName, String[] coursesRegistered, String status, String statusDate) {
+        super(recordID, firstName, lastName);
         for (String s :
                 coursesRegistered) {
             this.coursesRegistered.add(s);
@@ -1,7 +1,6 @@
 package Record;
 
 import java.io.Serializable;
-import java.util.Random;
 
 public class TeacherRecord extends Records implements Serializable {
 
@@ -10,31 +9,15 @@ public class TeacherRecord extends Records implements Serializable {
     private String specialiazation;
     private String location;
 
-    public TeacherRecord(String firstName, String lastName, String address, String phone, String specialiazation, String location) {
+    public TeacherRecord(String recordID, String firstName, String lastName, String address, String phone, String specialiazation, String location) {
 
-        super(firstName, lastName);
-        this.recordID = genRecordID();
+        super(recordID, firstName, lastName);
         this.address = address;
         this.phone = phone;
         this.specialiazation = specialiazation;
         this.location = location;
     }
 
-    @Override
-    public String genRecordID(){
-        String recordId = "TR";
-        String chars = "1234567890";
-        while (recordId.length()<7){
-            recordId+=new Random().nextInt(9);
-        }
-        return recordId;
-    }
-
-    @Override
-    public void regenRecordID() {
-        this.recordID = genRecordID();
-    }
-
     public String getAddress() {
         return address;
     }
@@ -0,0 +1,208 @@
+import Record.Records;
+import Record.StudentRecord;
+import Record.TeacherRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Record storage of one center: records grouped by last-name initial plus a primary index by record ID.
+ * Both maps are concurrent, so creates under different initials never contend on one lock and readers
+ * iterate weakly consistent views instead of throwing ConcurrentModificationException.
+ * Record counts are kept in striped LongAdders as records are added, so counting never walks the buckets.
+ *
+ * Secondary indexes map each value of the searchable fields (teachers: specialiazation, location;
+ * students: status, every entry of coursesRegistered) to the IDs of the records holding it, in ID order,
+ * so a search reads one page of matching IDs instead of scanning the center.
+ */
+public class RecordStore {
+    private final ConcurrentHashMap<Character, Set<Records>> buckets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Records> index = new ConcurrentHashMap<>();
+    private final LongAdder teacherCount = new LongAdder();
+    private final LongAdder studentCount = new LongAdder();
+    // field name -> field value -> IDs of the records with that value
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, NavigableSet<String>>> secondary =
+            new ConcurrentHashMap<>();
+
+    // searchable fields of each record type
+    private static final List<String> TEACHER_INDEXED = Collections.unmodifiableList(
+            Arrays.asList("specialiazation", "location"));
+    private static final List<String> STUDENT_INDEXED = Collections.unmodifiableList(
+            Arrays.asList("status", "coursesRegistered"));
+
+    // IDs grow wider past 99999 (TR100000), so shorter IDs sort first to keep them in creation order
+    private static final Comparator<String> ID_ORDER =
+            Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder());
+
+    public interface Change {
+        void apply() throws Exception;
+    }
+
+    /*
+     * Adds the record unless its ID is already taken, in which case nothing changes and false is returned.
+     */
+    public boolean add(Records record) {
+        if (index.putIfAbsent(record.getRecordID(), record) != null) {
+            return false;
+        }
+        synchronized (record) {
+            buckets.computeIfAbsent(keyOf(record), k -> ConcurrentHashMap.newKeySet()).add(record);
+            for (String fieldName : indexedFields(record)) {
+                addToIndex(record.getRecordID(), fieldName, indexedValues(record, fieldName));
+            }
+        }
+        counterOf(record).increment();
+        return true;
+    }
+
+    public Records get(String recordID) {
+        return index.get(recordID);
+    }
+
+    /*
+     * Applies change to fieldName of record under the record's monitor, so two edits of the same record can't
+     * interleave, then moves the record to the bucket of its new last-name initial and to the index entries of
+     * the field's new value if they changed.
+     */
+    public void update(Records record, String fieldName, Change change) throws Exception {
+        synchronized (record) {
+            char oldKey = keyOf(record);
+            Collection<String> oldValues = indexedValues(record, fieldName);
+            change.apply();
+            relocate(record, oldKey);
+            if (oldValues != null) {
+                Collection<String> newValues = indexedValues(record, fieldName);
+                List<String> removed = new ArrayList<>(oldValues);
+                removed.removeAll(newValues);
+                List<String> added = new ArrayList<>(newValues);
+                added.removeAll(oldValues);
+                removeFromIndex(record.getRecordID(), fieldName, removed);
+                addToIndex(record.getRecordID(), fieldName, added);
+            }
+        }
+    }
+
+    private void relocate(Records record, char oldKey) {
+        char newKey = keyOf(record);
+        if (newKey == oldKey) return;
+        buckets.computeIfAbsent(newKey, k -> ConcurrentHashMap.newKeySet()).add(record);
+        Set<Records> oldBucket = buckets.get(oldKey);
+        if (oldBucket != null) {
+            oldBucket.remove(record);
+        }
+    }
+
+    /*
+     * Every record of the center, weakly consistent with concurrent creates.
+     */
+    public Collection<Records> records() {
+        return Collections.unmodifiableCollection(index.values());
+    }
+
+    public Collection<Records> bucket(char key) {
+        Set<Records> bucket = buckets.get(key);
+        return bucket == null ? Collections.emptySet() : Collections.unmodifiableSet(bucket);
+    }
+
+    /*
+     * Up to limit records whose fieldName holds value, in ID order, starting after the ID afterRecordID
+     * (from the first match when it is empty). Records edited meanwhile are checked again, so every record
+     * returned matches at the time it is read.
+     */
+    public List<Records> find(String fieldName, String value, String afterRecordID, int limit) {
+        List<Records> page = new ArrayList<>(Math.min(limit, 64));
+        Map<String, NavigableSet<String>> values = secondary.get(fieldName);
+        NavigableSet<String> ids = values == null ? null : values.get(value);
+        if (ids == null) return page;
+        Iterable<String> candidates = afterRecordID.isEmpty() ? ids : ids.tailSet(afterRecordID, false);
+        for (String recordID : candidates) {
+            if (page.size() == limit) break;
+            Records record = index.get(recordID);
+            if (record == null) continue;
+            synchronized (record) {
+                Collection<String> current = indexedValues(record, fieldName);
+                if (current != null && current.contains(value)) {
+                    page.add(record);
+                }
+            }
+        }
+        return page;
+    }
+
+    public static boolean isSearchable(String fieldName) {
+        return TEACHER_INDEXED.contains(fieldName) || STUDENT_INDEXED.contains(fieldName);
+    }
+
+    private static List<String> indexedFields(Records record) {
+        return record instanceof TeacherRecord ? TEACHER_INDEXED : STUDENT_INDEXED;
+    }
+
+    /*
+     * Current index values of fieldName in record, or null if the field isn't indexed for its type.
+     */
+    private static Collection<String> indexedValues(Records record, String fieldName) {
+        if (record instanceof TeacherRecord) {
+            TeacherRecord teacher = (TeacherRecord) record;
+            switch (fieldName) {
+                case "specialiazation": return Collections.singletonList(teacher.getSpecialiazation());
+                case "location": return Collections.singletonList(teacher.getLocation());
+                default: return null;
+            }
+        }
+        StudentRecord student = (StudentRecord) record;
+        switch (fieldName) {
+            case "status": return Collections.singletonList(student.getStatus());
+            case "coursesRegistered": return new ArrayList<>(student.getCoursesRegistered());
+            default: return null;
+        }
+    }
+
+    private void addToIndex(String recordID, String fieldName, Collection<String> values) {
+        Map<String, NavigableSet<String>> byValue = secondary.computeIfAbsent(fieldName, k -> new ConcurrentHashMap<>());
+        for (String value : values) {
+            if (value == null) continue;
+            byValue.computeIfAbsent(value, k -> new ConcurrentSkipListSet<>(ID_ORDER)).add(recordID);
+        }
+    }
+
+    private void removeFromIndex(String recordID, String fieldName, Collection<String> values) {
+        Map<String, NavigableSet<String>> byValue = secondary.get(fieldName);
+        if (byValue == null) return;
+        for (String value : values) {
+            NavigableSet<String> ids = value == null ? null : byValue.get(value);
+            if (ids != null) {
+                ids.remove(recordID);
+            }
+        }
+    }
+
+    public int size() {
+        return (int) (teacherCount.sum() + studentCount.sum());
+    }
+
+    public int teacherCount() {
+        return (int) teacherCount.sum();
+    }
+
+    public int studentCount() {
+        return (int) studentCount.sum();
+    }
+
+    private LongAdder counterOf(Records record) {
+        return record instanceof TeacherRecord ? teacherCount : studentCount;
+    }
+
+    public static char keyOf(Records record) {
+        return record.getLastName().charAt(0);
+    }
+}
@@ -0,0 +1,137 @@
+import CenterServer.CenterService;
+import CenterServer.CenterServiceHelper;
+import org.omg.CORBA.ORB;
+import org.omg.CORBA.Policy;
+import org.omg.CosNaming.NameComponent;
+import org.omg.CosNaming.NamingContextExt;
+import org.omg.CosNaming.NamingContextExtHelper;
+import org.omg.PortableServer.IdAssignmentPolicyValue;
+import org.omg.PortableServer.LifespanPolicyValue;
+import org.omg.PortableServer.POA;
+import org.omg.PortableServer.ThreadPolicyValue;
+
+import java.util.Collection;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Startup of the center servers of one JVM: ORB, POAs, servants, naming service bindings.
+ *
+ * The servant lives in its own child POA instead of the RootPOA so its policies are explicit:
+ * dcms.poa.threadPolicy is ORB_CTRL_MODEL (default, requests run concurrently) or SINGLE_THREAD_MODEL.
+ * With the JDK ORB, requests run on a pool of at most dcms.orb.maxThreads workers (default 64) that retire
+ * after dcms.orb.threadIdleMillis idle; requests beyond that wait in a queue of dcms.orb.queueCapacity
+ * (default 1024), and once that is full the ORB stops reading new ones until it has run one itself.
+ * The ORB's connection cache is bounded by dcms.orb.highWaterMark / lowWaterMark / numberToReclaim
+ * when set.
+ * Operation metrics are served on http://127.0.0.1:<dcms.metrics.port>/metrics when that port is set, and
+ * through JMX either way.
+ */
+public class ServerBootstrap {
+
+    /*
+     * Serves the given centers of config from this JVM, all on one ORB, each in its own POA, until every one of
+     * them has been shut down.
+     */
+    public static void run(String[] args, CenterConfig config, Collection<String> centerNames) {
+        try{
+            // create and initialize the ORB
+            ORB orb = ORB.init(args, orbProperties());
+            installThreadPool(orb);
+
+            // get reference to rootpoa & activate the POAManager
+            POA rootpoa =
+                    (POA)orb.resolve_initial_references("RootPOA");
+            rootpoa.the_POAManager().activate();
+
+            // get the root naming context
+            // NameService invokes the transient name service
+            org.omg.CORBA.Object objRef =
+                    orb.resolve_initial_references("NameService");
+            // Use NamingContextExt, which is part of the
+            // Interoperable Naming Service (INS) specification.
+            NamingContextExt ncRef =
+                    NamingContextExtHelper.narrow(objRef);
+
+            AtomicInteger running = new AtomicInteger(centerNames.size());
+            for (String centerName : centerNames) {
+                POA centerPoa = createCenterPoa(rootpoa, centerName);
+
+                // create servant and register it with the ORB
+                CenterSystem service = new CenterSystem(centerName, config.address(centerName).getPort(), config.centers());
+                service.setORB(orb);
+                // the ORB outlives a center as long as another one in this JVM is still up
+                service.setShutdownAction(() -> {
+                    centerPoa.destroy(false, false);
+                    if (running.decrementAndGet() == 0) {
+                        orb.shutdown(false);
+                    }
+                });
+
+                // get object reference from the servant
+                byte[] objectId = centerName.getBytes();
+                centerPoa.activate_object_with_id(objectId, service);
+                org.omg.CORBA.Object ref = centerPoa.id_to_reference(objectId);
+                // and cast the reference to a CORBA reference
+                CenterService href = CenterServiceHelper.narrow(ref);
+
+                // bind the Object Reference in Naming
+                NameComponent path[] = ncRef.to_name( centerName );
+                ncRef.rebind(path, href);
+
+                System.out.println
+                        (centerName + " server ready and waiting ...");
+            }
+
+            Metrics.startHttpEndpoint();
+            // wait for invocations from clients
+            orb.run();
+        }
+
+        catch (Exception e) {
+            System.err.println("ERROR: " + e);
+            e.printStackTrace(System.out);
+        }
+
+        Metrics.stopHttpEndpoint();
+        System.out.println(centerNames + " server Exiting ...");
+    }
+
+    private static Properties orbProperties() {
+        Properties properties = new Properties();
+        copy("dcms.orb.highWaterMark", "com.sun.CORBA.connection.ORBHighWaterMark", properties);
+        copy("dcms.orb.lowWaterMark", "com.sun.CORBA.connection.ORBLowWaterMark", properties);
+        copy("dcms.orb.numberToReclaim", "com.sun.CORBA.connection.ORBNumberToReclaim", properties);
+        return properties;
+    }
+
+    private static void copy(String from, String to, Properties properties) {
+        String value = System.getProperty(from);
+        if (value != null) {
+            properties.setProperty(to, value);
+        }
+    }
+
+    private static void installThreadPool(ORB orb) {
+        // a no-op on ORBs other than the JDK one
+        OrbThreadPool.install(orb,
+                Integer.getInteger("dcms.orb.maxThreads", 64),
+                Integer.getInteger("dcms.orb.queueCapacity", 1024),
+                Long.getLong("dcms.orb.threadIdleMillis", 120000));
+    }
+
+    private static POA createCenterPoa(POA rootpoa, String centerName) throws Exception {
+        ThreadPolicyValue threadPolicy = "SINGLE_THREAD_MODEL".equals(System.getProperty("dcms.poa.threadPolicy"))
+                ? ThreadPolicyValue.SINGLE_THREAD_MODEL : ThreadPolicyValue.ORB_CTRL_MODEL;
+        Policy[] policies = {
+                rootpoa.create_thread_policy(threadPolicy),
+                rootpoa.create_id_assignment_policy(IdAssignmentPolicyValue.USER_ID),
+                rootpoa.create_lifespan_policy(LifespanPolicyValue.TRANSIENT)
+        };
+        POA centerPoa = rootpoa.create_POA(centerName + "POA", rootpoa.the_POAManager(), policies);
+        for (Policy policy : policies) {
+            policy.destroy();
+        }
+        return centerPoa;
+    }
+}
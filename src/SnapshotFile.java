@@ -0,0 +1,269 @@
+import Record.Records;
+import Record.StudentRecord;
+import Record.TeacherRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/*
+ * Compact binary snapshot of a center, written and read through memory-mapped windows of the file.
+ *
+ * Layout (big-endian):
+ *   header   magic "DCMS", version, generation, record count, string count, offset of the string table
+ *   records  type byte, then per record type:
+ *            teacher: recordID, firstName, lastName, address, phone as length-prefixed UTF-8,
+ *                     specialization and location as string table entries
+ *            student: recordID, firstName, lastName as length-prefixed UTF-8,
+ *                     status and statusDate as string table entries, course count, course entries
+ *   strings  the values repeated across records (location, specialization, status, dates, courses),
+ *            each once, as length-prefixed UTF-8
+ *
+ * Records are read in order, so nothing points at them.
+ */
+public class SnapshotFile {
+    private static final int MAGIC = 0x44434D53;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 8;
+    private static final long WINDOW = 64L * 1024 * 1024;
+    private static final byte TEACHER = 1;
+    private static final byte STUDENT = 2;
+
+    public static void write(File file, long generation, Collection<Records> records) throws IOException {
+        long end;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            MappedWriter out = new MappedWriter(raf.getChannel(), HEADER_SIZE);
+            Map<String, Integer> strings = new HashMap<>();
+            List<String> stringTable = new ArrayList<>();
+            int count = 0;
+            for (Records record : records) {
+                count++;
+                synchronized (record) {
+                    if (record instanceof TeacherRecord) {
+                        TeacherRecord teacher = (TeacherRecord) record;
+                        out.putByte(TEACHER);
+                        out.putString(teacher.getRecordID());
+                        out.putString(teacher.getFirstName());
+                        out.putString(teacher.getLastName());
+                        out.putString(teacher.getAddress());
+                        out.putString(teacher.getPhone());
+                        out.putInt(intern(teacher.getSpecialiazation(), strings, stringTable));
+                        out.putInt(intern(teacher.getLocation(), strings, stringTable));
+                    } else {
+                        StudentRecord student = (StudentRecord) record;
+                        out.putByte(STUDENT);
+                        out.putString(student.getRecordID());
+                        out.putString(student.getFirstName());
+                        out.putString(student.getLastName());
+                        out.putInt(intern(student.getStatus(), strings, stringTable));
+                        out.putInt(intern(student.getStatusDate(), strings, stringTable));
+                        List<String> courses = student.getCoursesRegistered();
+                        out.putInt(courses.size());
+                        for (String course : courses) {
+                            out.putInt(intern(course, strings, stringTable));
+                        }
+                    }
+                }
+            }
+            long stringTableOffset = out.position();
+            for (String value : stringTable) {
+                out.putString(value);
+            }
+            end = out.position();
+            out.finish();
+
+            MappedByteBuffer header = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putLong(generation);
+            header.putInt(count);
+            header.putInt(stringTable.size());
+            header.putLong(stringTableOffset);
+            header.force();
+        }
+        // the last window mapped past the end; the file is cut back to size once the channel that mapped it is
+        // closed and the windows are no longer used
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(end);
+            raf.getChannel().force(true);
+        }
+    }
+
+    /*
+     * Hands every record of the snapshot to consumer and returns the snapshot's generation.
+     */
+    public static long read(File file, Consumer<Records> consumer) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Truncated snapshot " + file);
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            int magic = header.getInt();
+            int version = header.getInt();
+            if (magic != MAGIC || version != VERSION) {
+                throw new IOException("Not a version " + VERSION + " snapshot: " + file);
+            }
+            long generation = header.getLong();
+            int count = header.getInt();
+            String[] stringTable = new String[header.getInt()];
+            long stringTableOffset = header.getLong();
+
+            MappedReader strings = new MappedReader(channel, stringTableOffset);
+            for (int i = 0; i < stringTable.length; i++) {
+                stringTable[i] = strings.getString();
+            }
+            MappedReader in = new MappedReader(channel, HEADER_SIZE);
+            for (int i = 0; i < count; i++) {
+                byte type = in.getByte();
+                if (type == TEACHER) {
+                    consumer.accept(new TeacherRecord(in.getString(), in.getString(), in.getString(), in.getString(),
+                            in.getString(), stringTable[in.getInt()], stringTable[in.getInt()]));
+                } else if (type == STUDENT) {
+                    String recordID = in.getString();
+                    String firstName = in.getString();
+                    String lastName = in.getString();
+                    String status = stringTable[in.getInt()];
+                    String statusDate = stringTable[in.getInt()];
+                    String[] courses = new String[in.getInt()];
+                    for (int c = 0; c < courses.length; c++) {
+                        courses[c] = stringTable[in.getInt()];
+                    }
+                    consumer.accept(new StudentRecord(recordID, firstName, lastName, courses, status, statusDate));
+                } else {
+                    throw new IOException("Corrupt snapshot " + file + ": record type " + type);
+                }
+            }
+            return generation;
+        }
+    }
+
+    private static int intern(String value, Map<String, Integer> strings, List<String> stringTable) {
+        Integer position = strings.get(value);
+        if (position == null) {
+            position = stringTable.size();
+            strings.put(value, position);
+            stringTable.add(value);
+        }
+        return position;
+    }
+
+    /*
+     * Sequential writer over consecutive mapped windows; a new window is mapped when the current one can't
+     * hold the next value.
+     */
+    private static class MappedWriter {
+        private final FileChannel channel;
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        MappedWriter(FileChannel channel, long start) throws IOException {
+            this.channel = channel;
+            this.windowStart = start;
+            this.window = channel.map(FileChannel.MapMode.READ_WRITE, start, WINDOW);
+        }
+
+        long position() {
+            return windowStart + window.position();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (window.remaining() >= bytes) return;
+            window.force();
+            windowStart = position();
+            window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, Math.max(WINDOW, bytes));
+        }
+
+        void putByte(byte value) throws IOException {
+            ensure(1);
+            window.put(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            window.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            window.putLong(value);
+        }
+
+        void putString(String value) throws IOException {
+            int length = value.length();
+            ensure(4 + 3 * length);
+            int lengthPosition = window.position();
+            window.position(lengthPosition + 4);
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x80) {
+                    // only non-ASCII text pays for an encoded copy
+                    window.put(value.substring(i).getBytes(StandardCharsets.UTF_8));
+                    break;
+                }
+                window.put((byte) c);
+            }
+            window.putInt(lengthPosition, window.position() - lengthPosition - 4);
+        }
+
+        void finish() {
+            window.force();
+            window = null;
+        }
+    }
+
+    private static class MappedReader {
+        private final FileChannel channel;
+        private final long size;
+        private long windowStart;
+        private MappedByteBuffer window;
+        private byte[] scratch = new byte[256];
+
+        MappedReader(FileChannel channel, long start) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.windowStart = start;
+            this.window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, size - start));
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (window.remaining() >= bytes) return;
+            windowStart += window.position();
+            if (windowStart + bytes > size) {
+                throw new IOException("Snapshot ends in the middle of a record");
+            }
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                    Math.min(Math.max(WINDOW, bytes), size - windowStart));
+        }
+
+        byte getByte() throws IOException {
+            ensure(1);
+            return window.get();
+        }
+
+        int getInt() throws IOException {
+            ensure(4);
+            return window.getInt();
+        }
+
+        String getString() throws IOException {
+            int length = getInt();
+            ensure(length);
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            window.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
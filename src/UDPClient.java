@@ -1,36 +1,386 @@
+import CenterServer.RecordInfo;
+import CenterServer.RecordPage;
+
 import java.io.IOException;
-import java.net.*;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/*
+ * Inter-center client: one long-lived non-blocking DatagramChannel per JVM carries every peer query.
+ * Each request is tagged with an ID and a single receiver thread completes the matching pending future,
+ * so any number of queries can be in flight over the same socket, and replies arriving late, twice or out of
+ * order are matched or dropped by their ID. Frames are described in UDPMessage; a reply split into chunks is
+ * put back together before it is decoded, from the chunks of one run of the operation only.
+ *
+ * A request without a (complete) reply is sent again with the same ID after a retransmission timeout computed
+ * per peer from measured round trips (smoothed RTT plus four times its variation, as TCP does), doubling with
+ * every attempt, up to dcms.udp.maxAttempts attempts and within the caller's timeout. Only replies to requests
+ * sent once are measured, since a reply to a retransmitted one could belong to any attempt. Servers
+ * answer a repeated ID from their recent replies instead of running the operation again.
+ */
 public class UDPClient {
-    public static String request(String operation, String hostname ,int UDPServerPort){
-        String receivedInfor = "";
-        DatagramSocket datagramSocket = null;
-        try {
-            datagramSocket = new DatagramSocket();
+    private static final int MAX_ATTEMPTS = Integer.getInteger("dcms.udp.maxAttempts", 5);
+    private static final long INITIAL_RTO_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("dcms.udp.initialRtoMillis", 200));
+    private static final long MIN_RTO_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("dcms.udp.minRtoMillis", 20));
+    private static final long MAX_RTO_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("dcms.udp.maxRtoMillis", 2000));
+
+    private static volatile UDPClient shared;
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "udp-client-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DatagramChannel channel;
+    private final UDPTransport transport;
+    private final Selector selector;
+    private final ConcurrentHashMap<Long, Call<?>> pending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<InetSocketAddress, RoundTrip> roundTrips = new ConcurrentHashMap<>();
+    private final LongAdder retransmits = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder unsent = new LongAdder();
+    // request IDs start at 1, 0 marks one-way messages
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private final BufferPool buffers = BufferPool.shared();
+
+    /*
+     * Writes a request payload; it must fit one frame.
+     */
+    public interface Payload {
+        void write(ByteBuffer buffer);
+    }
+
+    /*
+     * Reads a reply payload.
+     */
+    public interface Decoder<T> {
+        T read(ByteBuffer buffer);
+    }
+
+    /*
+     * The ERROR reply of a peer: it got the request and refused it.
+     */
+    public static class PeerError extends Exception {
+        public PeerError(String message) {
+            super(message);
+        }
+    }
+
+    /*
+     * What a peer reports about itself in reply to HEALTH.
+     */
+    public static final class Health {
+        public final String center;
+        public final int records;
+        public final int queueDepth;
+        public final long dropped;
+        public final long uptimeMillis;
+
+        public Health(String center, int records, int queueDepth, long dropped, long uptimeMillis) {
+            this.center = center;
+            this.records = records;
+            this.queueDepth = queueDepth;
+            this.dropped = dropped;
+            this.uptimeMillis = uptimeMillis;
+        }
+    }
+
+    public UDPClient() throws IOException {
+        this(UDPTransport.DIRECT);
+    }
+
+    UDPClient(UDPTransport transport) throws IOException {
+        this.transport = transport;
+        channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, 1 << 20);
+        channel.configureBlocking(false);
+        channel.bind(null);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        Metrics.gauge("udp.client.retransmits", retransmits::sum);
+        Metrics.gauge("udp.client.failures", failures::sum);
+        Metrics.gauge("udp.client.unsent", unsent::sum);
+        Thread receiver = new Thread(this::receiveLoop, "udp-client-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    public static UDPClient shared() throws IOException {
+        UDPClient client = shared;
+        if (client == null) {
+            synchronized (UDPClient.class) {
+                client = shared;
+                if (client == null) {
+                    client = new UDPClient();
+                    shared = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    public CompletableFuture<Integer> count(InetSocketAddress address, byte type, int timeoutMillis) {
+        return call(UDPMessage.COUNT, buffer -> buffer.put(type), ByteBuffer::getInt, address, timeoutMillis);
+    }
+
+    /*
+     * Which of recordIDs the peer holds.
+     */
+    public CompletableFuture<boolean[]> lookup(InetSocketAddress address, String[] recordIDs, int timeoutMillis) {
+        return call(UDPMessage.LOOKUP, buffer -> UDPMessage.putStrings(buffer, recordIDs), buffer -> {
+            boolean[] found = new boolean[buffer.getShort() & 0xFFFF];
+            for (int i = 0; i < found.length; i++) {
+                found[i] = buffer.get() != 0;
+            }
+            return found;
+        }, address, timeoutMillis);
+    }
+
+    /*
+     * The record recordID of the peer, or null when it doesn't hold it.
+     */
+    public CompletableFuture<RecordInfo> fetch(InetSocketAddress address, String recordID, int timeoutMillis) {
+        return call(UDPMessage.FETCH, buffer -> UDPMessage.putString(buffer, recordID),
+                buffer -> buffer.get() != 0 ? UDPMessage.getRecord(buffer) : null, address, timeoutMillis);
+    }
+
+    public CompletableFuture<Health> health(InetSocketAddress address, int timeoutMillis) {
+        return call(UDPMessage.HEALTH, buffer -> { }, buffer -> new Health(UDPMessage.getString(buffer), buffer.getInt(),
+                buffer.getInt(), buffer.getLong(), buffer.getLong()), address, timeoutMillis);
+    }
+
+    /*
+     * One export page of the peer, see CenterSystem.exportRecords.
+     */
+    public CompletableFuture<RecordPage> export(InetSocketAddress address, String cursor, int pageSize, int timeoutMillis) {
+        return call(UDPMessage.EXPORT, buffer -> {
+            UDPMessage.putString(buffer, cursor);
+            buffer.putInt(pageSize);
+        }, buffer -> {
+            String nextCursor = UDPMessage.getString(buffer);
+            return new RecordPage(UDPMessage.getRecords(buffer), nextCursor);
+        }, address, timeoutMillis);
+    }
+
+    /*
+     * A request waiting for its reply.
+     */
+    private static final class Call<T> {
+        final long requestId;
+        final byte opcode;
+        final Payload payload;
+        final Decoder<T> decoder;
+        final InetSocketAddress address;
+        final long deadlineNanos;
+        final CompletableFuture<T> reply = new CompletableFuture<>();
+        volatile int attempts;
+        volatile long sentNanos;
+        // chunks of a reply split over several frames, only touched by the receiver thread
+        ByteBuffer chunked;
+        boolean[] received;
+        int missing;
+        int replyId;
+        // attempts made when the chunks of replyId started arriving
+        int assemblingSince;
+
+        Call(long requestId, byte opcode, Payload payload, Decoder<T> decoder, InetSocketAddress address,
+             long deadlineNanos) {
+            this.requestId = requestId;
+            this.opcode = opcode;
+            this.payload = payload;
+            this.decoder = decoder;
+            this.address = address;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        void complete(ByteBuffer buffer, boolean error) {
             try {
-                InetAddress inetAddress = InetAddress.getLocalHost();
-                byte[] opsBytes = operation.getBytes();
-
-                DatagramPacket datagramPacket = new DatagramPacket(opsBytes,operation.length(),inetAddress,UDPServerPort);
-                try {
-                    datagramSocket.send(datagramPacket);
-                    byte[] buffer = new byte[1024];
-                    DatagramPacket replayByte = new DatagramPacket(buffer,buffer.length);
-                    datagramSocket.receive(replayByte);
-                    receivedInfor = new String(replayByte.getData(),0, replayByte.getLength());
-                    datagramSocket.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+                if (error) {
+                    reply.completeExceptionally(new PeerError(UDPMessage.getString(buffer)));
+                } else {
+                    reply.complete(decoder.read(buffer));
+                }
+            } catch (RuntimeException e) {
+                // a payload that doesn't decode
+                reply.completeExceptionally(e);
+            }
+        }
+    }
+
+    /*
+     * Round-trip estimate of one peer, RFC 6298 style.
+     */
+    private static final class RoundTrip {
+        private long smoothed = -1;
+        private long variation;
+
+        synchronized void sample(long nanos) {
+            if (smoothed < 0) {
+                smoothed = nanos;
+                variation = nanos / 2;
+            } else {
+                variation = (3 * variation + Math.abs(smoothed - nanos)) / 4;
+                smoothed = (7 * smoothed + nanos) / 8;
+            }
+        }
+
+        synchronized long timeoutNanos() {
+            if (smoothed < 0) return INITIAL_RTO_NANOS;
+            return Math.min(MAX_RTO_NANOS, Math.max(MIN_RTO_NANOS, smoothed + 4 * variation));
+        }
+    }
+
+    /*
+     * Sends an opcode request to a resolved address; the future completes with the decoded reply, with a
+     * PeerError, or with a TimeoutException once timeoutMillis have passed or every attempt went unanswered
+     * (0 only limits the attempts).
+     */
+    public <T> CompletableFuture<T> call(byte opcode, Payload payload, Decoder<T> decoder, InetSocketAddress address,
+                                         int timeoutMillis) {
+        long requestId = nextRequestId.incrementAndGet();
+        long deadline = timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : Long.MAX_VALUE;
+        Call<T> call = new Call<>(requestId, opcode, payload, decoder, address, deadline);
+        pending.put(requestId, call);
+        transmit(call);
+        return call.reply;
+    }
+
+    private void transmit(Call<?> call) {
+        if (pending.get(call.requestId) != call) return;
+        RoundTrip roundTrip = roundTrips.computeIfAbsent(call.address, address -> new RoundTrip());
+        // counted before writing, the reply can arrive before write returns
+        int attempts = ++call.attempts;
+        long now = System.nanoTime();
+        if (attempts == 1) {
+            call.sentNanos = now;
+        } else {
+            retransmits.increment();
+        }
+        try {
+            write(call.opcode, call.requestId, call.payload, call.address);
+        } catch (IOException | RuntimeException e) {
+            if (pending.remove(call.requestId, call)) {
+                failures.increment();
+                call.reply.completeExceptionally(e);
+            }
+            return;
+        }
+        long timeout = roundTrip.timeoutNanos();
+        timeout = Math.min(MAX_RTO_NANOS, timeout << Math.min(attempts - 1, 16));
+        long remaining = call.deadlineNanos - now;
+        if (attempts < MAX_ATTEMPTS && timeout < remaining) {
+            timer.schedule(() -> transmit(call), timeout, TimeUnit.NANOSECONDS);
+        } else {
+            timer.schedule(() -> {
+                if (pending.remove(call.requestId, call)) {
+                    failures.increment();
+                    call.reply.completeExceptionally(new TimeoutException(
+                            "No reply from " + call.address + " after " + call.attempts + " attempts"));
                 }
-            } catch (UnknownHostException e) {
-                e.printStackTrace();
+            }, Math.min(timeout, remaining), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void write(byte opcode, long requestId, Payload payload, InetSocketAddress address) throws IOException {
+        ByteBuffer buffer = buffers.acquire();
+        try {
+            UDPMessage.header(buffer, opcode, (byte) 0, 0, 1, requestId, 0);
+            payload.write(buffer);
+            buffer.flip();
+            // a non-blocking send returns 0 while the socket's send buffer is full; the datagram is then lost
+            // like one dropped on the way, and a request is sent again when its retransmission timer fires
+            if (transport.send(channel, buffer, address) == 0) {
+                unsent.increment();
             }
-        } catch (SocketException e) {
-            e.printStackTrace();
+        } catch (BufferOverflowException e) {
+            throw new IllegalArgumentException("Request does not fit one frame");
+        } finally {
+            buffers.release(buffer);
+        }
+    }
+
+    /*
+     * Sends a one-way message: request ID 0 tells the receiving server not to reply.
+     */
+    public void post(byte opcode, Payload payload, InetSocketAddress address) throws IOException {
+        write(opcode, 0, payload, address);
+    }
+
+    private void receive(ByteBuffer buffer) {
+        if (!UDPMessage.complete(buffer) || UDPMessage.version(buffer) != UDPMessage.VERSION
+                || (UDPMessage.flags(buffer) & UDPMessage.REPLY) == 0) {
+            return;
         }
-        finally {
-            datagramSocket.close();
+        long requestId = UDPMessage.requestId(buffer);
+        Call<?> call = pending.get(requestId);
+        if (call == null) return;
+        int chunk = UDPMessage.chunk(buffer);
+        int chunks = UDPMessage.chunks(buffer);
+        boolean error = (UDPMessage.flags(buffer) & UDPMessage.ERROR) != 0;
+        UDPMessage.payload(buffer);
+        if (chunks > 1) {
+            if (chunks > UDPMessage.MAX_CHUNKS || chunk >= chunks) return;
+            int replyId = UDPMessage.replyId(buffer);
+            if (call.chunked == null || call.replyId != replyId) {
+                // another run of the operation: its reply replaces the one being put together only if the request
+                // was sent again since that one started, otherwise this is a straggler of a reply given up on
+                int attempts = call.attempts;
+                if (call.chunked != null && attempts == call.assemblingSince) return;
+                call.chunked = ByteBuffer.allocate(chunks * UDPMessage.MAX_PAYLOAD_BYTES);
+                call.received = new boolean[chunks];
+                call.missing = chunks;
+                call.replyId = replyId;
+                call.assemblingSince = attempts;
+            }
+            if (call.received.length != chunks || call.received[chunk]) return;
+            // every chunk but the last is full, so each one has a fixed place
+            int offset = chunk * UDPMessage.MAX_PAYLOAD_BYTES;
+            if (chunk + 1 == chunks) {
+                call.chunked.limit(offset + buffer.remaining());
+            }
+            call.chunked.position(offset);
+            call.chunked.put(buffer);
+            call.received[chunk] = true;
+            if (--call.missing > 0) return;
+            call.chunked.position(0);
+            buffer = call.chunked;
+        }
+        if (!pending.remove(requestId, call)) return;
+        if (call.attempts == 1) {
+            roundTrips.get(call.address).sample(System.nanoTime() - call.sentNanos);
+        }
+        call.complete(buffer, error);
+    }
+
+    private void receiveLoop() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BufferPool.DATAGRAM_SIZE);
+        while (channel.isOpen()) {
+            try {
+                selector.select();
+                selector.selectedKeys().clear();
+                while (channel.receive(buffer) != null) {
+                    buffer.flip();
+                    receive(buffer);
+                    buffer.clear();
+                }
+            } catch (IOException e) {
+                if (channel.isOpen()) {
+                    System.out.println("UDP Client failed to receive: " + e.getMessage());
+                }
+            }
         }
-        return receivedInfor;
     }
 }
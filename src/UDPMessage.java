@@ -0,0 +1,200 @@
+import CenterServer.RecordInfo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Wire format of inter-center datagrams. Every datagram is one frame:
+ *
+ *   version   1 byte   VERSION; a server answers any other with an ERROR reply
+ *   opcode    1 byte   COUNT, LOOKUP, FETCH, HEALTH, EXPORT or COUNT_DIGEST
+ *   flags     1 byte   REPLY on replies, plus ERROR when the payload is an error message
+ *   chunk     2 bytes  index of this frame in the reply, from 0
+ *   chunks    2 bytes  number of frames the reply was split into, 1 for requests
+ *   requestId 8 bytes  matches replies to requests; 0 for one-way messages, which get no reply
+ *   replyId   4 bytes  the run of the operation a reply comes from, the same in all its chunks; 0 for requests
+ *   payload   the rest
+ *
+ * Payloads are big-endian ints and longs, and strings as an unsigned 2-byte UTF-8 length and the bytes.
+ * A reply payload longer than MAX_PAYLOAD_BYTES is split into up to MAX_CHUNKS frames, all full but the last.
+ * A request sent again can be answered by a second run of the operation, whose chunks may differ from the
+ * first one's; replyId tells them apart so a reply is never put together from both.
+ *
+ *   COUNT         request: type (ALL, TEACHERS or STUDENTS)      reply: int count
+ *   LOOKUP        request: short n, n record IDs                  reply: short n, n bytes 1 if the record is here
+ *   FETCH         request: record ID                              reply: byte 1 and a record, or byte 0
+ *   HEALTH        request: nothing                                reply: center, int records, int queue depth,
+ *                                                                        long dropped, long uptime millis
+ *   EXPORT        request: export cursor, int page size           reply: next cursor, short n, n records
+ *   COUNT_DIGEST  one-way: center, int records, long boot, long sequence, long push millis
+ *
+ * A record is its eleven RecordInfo fields in IDL order, the courses as a short count and that many strings.
+ * Encoding writes straight into the buffer and decoding reads numbers in place, so neither allocates beyond
+ * the strings it returns.
+ */
+public class UDPMessage {
+    public static final byte VERSION = 4;
+
+    public static final byte COUNT = 1;
+    public static final byte LOOKUP = 2;
+    public static final byte FETCH = 3;
+    public static final byte HEALTH = 4;
+    public static final byte EXPORT = 5;
+    public static final byte COUNT_DIGEST = 6;
+
+    public static final byte REPLY = 1;
+    public static final byte ERROR = 2;
+
+    public static final byte ALL = 0;
+    public static final byte TEACHERS = 1;
+    public static final byte STUDENTS = 2;
+
+    public static final int HEADER_BYTES = 19;
+    // most payload bytes one frame can carry
+    public static final int MAX_PAYLOAD_BYTES = BufferPool.DATAGRAM_SIZE - HEADER_BYTES;
+    public static final int MAX_CHUNKS = 256;
+
+    private static final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[0xFFFF]);
+
+    /*
+     * Clears buffer and writes a frame header; the payload follows at the buffer's position.
+     */
+    public static void header(ByteBuffer buffer, byte opcode, byte flags, int chunk, int chunks, long requestId,
+                              int replyId) {
+        buffer.clear();
+        buffer.put(VERSION).put(opcode).put(flags).putShort((short) chunk).putShort((short) chunks).putLong(requestId)
+                .putInt(replyId);
+    }
+
+    /*
+     * Whether a received, flipped buffer is long enough to hold a header. The accessors below read the header
+     * in place; payload() moves the position to the payload.
+     */
+    public static boolean complete(ByteBuffer buffer) {
+        return buffer.limit() >= HEADER_BYTES;
+    }
+
+    public static byte version(ByteBuffer buffer) {
+        return buffer.get(0);
+    }
+
+    public static byte opcode(ByteBuffer buffer) {
+        return buffer.get(1);
+    }
+
+    public static byte flags(ByteBuffer buffer) {
+        return buffer.get(2);
+    }
+
+    public static int chunk(ByteBuffer buffer) {
+        return buffer.getShort(3) & 0xFFFF;
+    }
+
+    public static int chunks(ByteBuffer buffer) {
+        return buffer.getShort(5) & 0xFFFF;
+    }
+
+    public static long requestId(ByteBuffer buffer) {
+        return buffer.getLong(7);
+    }
+
+    public static int replyId(ByteBuffer buffer) {
+        return buffer.getInt(15);
+    }
+
+    public static ByteBuffer payload(ByteBuffer buffer) {
+        buffer.position(HEADER_BYTES);
+        return buffer;
+    }
+
+    public static void putString(ByteBuffer buffer, String value) {
+        int lengthAt = buffer.position();
+        buffer.putShort((short) 0);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | codePoint >> 18)).put((byte) (0x80 | codePoint >> 12 & 0x3F))
+                        .put((byte) (0x80 | codePoint >> 6 & 0x3F)).put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, as String.getBytes would
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+            }
+        }
+        int length = buffer.position() - lengthAt - Short.BYTES;
+        if (length > 0xFFFF) {
+            throw new IllegalArgumentException("String of " + length + " bytes is too long for a frame");
+        }
+        buffer.putShort(lengthAt, (short) length);
+    }
+
+    public static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = scratch.get();
+        buffer.get(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public static void putStrings(ByteBuffer buffer, String[] values) {
+        if (values.length > 0xFFFF) {
+            throw new IllegalArgumentException(values.length + " strings are too many for a frame");
+        }
+        buffer.putShort((short) values.length);
+        for (String value : values) {
+            putString(buffer, value);
+        }
+    }
+
+    public static String[] getStrings(ByteBuffer buffer) {
+        String[] values = new String[buffer.getShort() & 0xFFFF];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getString(buffer);
+        }
+        return values;
+    }
+
+    public static void putRecords(ByteBuffer buffer, RecordInfo[] infos) {
+        if (infos.length > 0xFFFF) {
+            throw new IllegalArgumentException(infos.length + " records are too many for a frame");
+        }
+        buffer.putShort((short) infos.length);
+        for (RecordInfo info : infos) {
+            putRecord(buffer, info);
+        }
+    }
+
+    public static RecordInfo[] getRecords(ByteBuffer buffer) {
+        RecordInfo[] infos = new RecordInfo[buffer.getShort() & 0xFFFF];
+        for (int i = 0; i < infos.length; i++) {
+            infos[i] = getRecord(buffer);
+        }
+        return infos;
+    }
+
+    public static void putRecord(ByteBuffer buffer, RecordInfo info) {
+        putString(buffer, info.recordID);
+        putString(buffer, info.center);
+        putString(buffer, info.firstName);
+        putString(buffer, info.lastName);
+        putString(buffer, info.address);
+        putString(buffer, info.phone);
+        putString(buffer, info.specialization);
+        putString(buffer, info.location);
+        putStrings(buffer, info.courseRegistered);
+        putString(buffer, info.status);
+        putString(buffer, info.statusDate);
+    }
+
+    public static RecordInfo getRecord(ByteBuffer buffer) {
+        return new RecordInfo(getString(buffer), getString(buffer), getString(buffer), getString(buffer),
+                getString(buffer), getString(buffer), getString(buffer), getString(buffer), getStrings(buffer),
+                getString(buffer), getString(buffer));
+    }
+}
@@ -1,54 +1,378 @@
+import CenterServer.RecordInfo;
+import CenterServer.RecordPage;
+import CenterServer.CenterServicePackage.except;
+
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/*
+ * The receiving thread only reads datagrams and hands them to a bounded worker pool; workers build and send
+ * the reply from their own buffer. When the queue is full the datagram is dropped, the asking center
+ * times out and reports the count as unavailable instead of piling more work on an overloaded server.
+ * Datagrams go through a DatagramChannel and pooled direct buffers, one buffer per request in flight.
+ * Unlike UDPClient's, the channel stays in blocking mode: the receiving thread has nothing else to wait for,
+ * and a worker whose reply finds the send buffer full waits for room instead of spinning.
+ *
+ * Requests and replies are UDPMessage frames. A worker encodes the reply payload into its own growable
+ * buffer and sends it as one frame, or as several chunks when it is larger than a datagram.
+ *
+ * Clients send a request again with the same ID when its reply is late. The replies of the last
+ * dcms.udp.dedupEntries requests (kept up to dcms.udp.dedupMillis, and to dcms.udp.dedupBytes of replies in
+ * all) are remembered per sender and ID, so a repeated request is answered from there, chunked replies
+ * included, or ignored while the first copy is still being handled, instead of running the operation twice.
+ * A request whose reply was already forgotten is run again; every operation only reads, and the new reply's
+ * chunks carry a new reply ID, so the client doesn't mix them with the first reply's.
+ */
 public class UDPServer implements Runnable {
+    private static final int MAX_REPLY_BYTES = UDPMessage.MAX_CHUNKS * UDPMessage.MAX_PAYLOAD_BYTES;
+    // each worker's reply payload, grown up to MAX_REPLY_BYTES when a reply needs it
+    private static final ThreadLocal<ByteBuffer[]> replyBuffers =
+            ThreadLocal.withInitial(() -> new ByteBuffer[]{ByteBuffer.allocate(UDPMessage.MAX_PAYLOAD_BYTES)});
+
     private int portNumber;
     private CenterSystem centerSystem;
-    private boolean stop = true;
-    private DatagramSocket datagramSocket = null;
+    private volatile boolean stop = true;
+    private DatagramChannel channel = null;
+    private final UDPTransport transport;
+    private final BufferPool buffers = BufferPool.shared();
+    private final ThreadPoolExecutor workers;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final RecentRequests recent = new RecentRequests(Integer.getInteger("dcms.udp.dedupEntries", 1024),
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("dcms.udp.dedupMillis", 10000)),
+            Long.getLong("dcms.udp.dedupBytes", 16 << 20));
+    private final AtomicInteger nextReplyId = new AtomicInteger();
+    private final Metrics.Timer countTimer;
+    private final long startedNanos = System.nanoTime();
 
     public UDPServer(int portNumber, CenterSystem centerSystem) {
+        this(portNumber, centerSystem,
+                Integer.getInteger("dcms.udpWorkers", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("dcms.udpQueue", 1024));
+    }
+
+    public UDPServer(int portNumber, CenterSystem centerSystem, int workerCount, int queueCapacity) {
+        this(portNumber, centerSystem, workerCount, queueCapacity, UDPTransport.DIRECT);
+    }
+
+    UDPServer(int portNumber, CenterSystem centerSystem, int workerCount, int queueCapacity, UDPTransport transport) {
         this.portNumber = portNumber;
+        this.transport = transport;
         this.centerSystem = centerSystem;
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "udp-worker-" + portNumber);
+                    thread.setDaemon(true);
+                    return thread;
+                }, (r, executor) -> {
+                    // dropped: the buffer goes back to the pool, the peer's request times out
+                    dropped.increment();
+                    if (r instanceof Reply) buffers.release(((Reply) r).buffer);
+                });
+        String center = centerSystem.getCenterName();
+        this.countTimer = Metrics.timer(center + ".udp.count");
+        Metrics.gauge(center + ".udp.queueDepth", () -> workers.getQueue().size());
+        Metrics.gauge(center + ".udp.dropped", dropped::sum);
+        Metrics.gauge(center + ".udp.duplicates", duplicates::sum);
     }
 
     @Override
     public void run() {
         try {
-            datagramSocket = new DatagramSocket(portNumber);
-            byte[] buffer = new byte[1024];
-            byte[] sendBuffer = new byte[1024];
+            channel = DatagramChannel.open();
+            channel.bind(new InetSocketAddress(portNumber));
             while (stop){
-                DatagramPacket request = new DatagramPacket(buffer,buffer.length);
+                ByteBuffer buffer = buffers.acquire();
                 try {
-                    datagramSocket.receive(request);
-                    System.out.printf("some data was recevied via udp");
-                    String receiveData = new String(request.getData(),0,request.getLength());
-                    System.out.printf(receiveData);
-                    if (receiveData.equals("getCount")) {
-                        String reply = centerSystem.getLocalRecordCount() + "";
-                        sendBuffer = reply.getBytes();
-                    }
-
-                    DatagramPacket send = new DatagramPacket(sendBuffer,sendBuffer.length,request.getAddress(),request.getPort());
-                    datagramSocket.send(send);
-
+                    SocketAddress sender = channel.receive(buffer);
+                    buffer.flip();
+                    workers.execute(new Reply(buffer, sender));
+                } catch (ClosedChannelException e) {
+                    buffers.release(buffer);
+                    break;
                 } catch (IOException e) {
-                    System.out.println("UDP Server socket is closed!");
+                    buffers.release(buffer);
+                    if (stop) {
+                        System.out.println("UDP Server failed to receive: " + e.getMessage());
+                    }
                 }
             }
-        } catch (SocketException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
         System.out.println("UDP Server is closed!");
 
     }
 
+    /*
+     * Writes the reply payload of a request into reply and returns its flags.
+     */
+    private byte handle(byte version, byte opcode, ByteBuffer request, ByteBuffer reply) {
+        if (version != UDPMessage.VERSION) {
+            return error(reply, "Unsupported protocol version " + version + ", " + centerSystem.getCenterName()
+                    + " speaks " + UDPMessage.VERSION);
+        }
+        try {
+            switch (opcode) {
+                case UDPMessage.COUNT:
+                    reply.putInt(centerSystem.getLocalRecordCount(request.get()));
+                    break;
+                case UDPMessage.LOOKUP:
+                    String[] recordIDs = UDPMessage.getStrings(request);
+                    reply.putShort((short) recordIDs.length);
+                    for (String recordID : recordIDs) {
+                        reply.put((byte) (centerSystem.holds(recordID) ? 1 : 0));
+                    }
+                    break;
+                case UDPMessage.FETCH:
+                    RecordInfo info = centerSystem.recordInfo(UDPMessage.getString(request));
+                    reply.put((byte) (info == null ? 0 : 1));
+                    if (info != null) UDPMessage.putRecord(reply, info);
+                    break;
+                case UDPMessage.HEALTH:
+                    UDPMessage.putString(reply, centerSystem.getCenterName());
+                    reply.putInt(centerSystem.getLocalRecordCount());
+                    reply.putInt(workers.getQueue().size());
+                    reply.putLong(dropped.sum());
+                    reply.putLong(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos));
+                    break;
+                case UDPMessage.EXPORT:
+                    RecordPage page = centerSystem.exportForPeer(UDPMessage.getString(request), request.getInt());
+                    UDPMessage.putString(reply, page.nextCursor);
+                    UDPMessage.putRecords(reply, page.records);
+                    break;
+                default:
+                    return error(reply, "Unknown operation " + opcode);
+            }
+        } catch (except e) {
+            return error(reply, e.reason);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return error(reply, "Malformed request for operation " + opcode);
+        }
+        return UDPMessage.REPLY;
+    }
+
+    private static byte error(ByteBuffer reply, String message) {
+        reply.clear();
+        UDPMessage.putString(reply, message);
+        return UDPMessage.REPLY | UDPMessage.ERROR;
+    }
+
+    private class Reply implements Runnable {
+        private final ByteBuffer buffer;
+        private final SocketAddress sender;
+
+        Reply(ByteBuffer buffer, SocketAddress sender) {
+            this.buffer = buffer;
+            this.sender = sender;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            byte opcode = 0;
+            try {
+                if (!UDPMessage.complete(buffer) || (UDPMessage.flags(buffer) & UDPMessage.REPLY) != 0) return;
+                byte version = UDPMessage.version(buffer);
+                opcode = UDPMessage.opcode(buffer);
+                long requestId = UDPMessage.requestId(buffer);
+                UDPMessage.payload(buffer);
+                if (requestId == 0) {
+                    // one-way message, nobody waits for a reply
+                    if (version == UDPMessage.VERSION && opcode == UDPMessage.COUNT_DIGEST) {
+                        centerSystem.receiveCountDigest(buffer);
+                    }
+                    return;
+                }
+                RequestKey key = new RequestKey(sender, requestId);
+                RecentRequests.Seen seen = recent.begin(key);
+                if (seen != null) {
+                    duplicates.increment();
+                    // no reply yet while the first copy is still being handled, which will send it
+                    if (seen.reply != null) {
+                        send(opcode, seen.flags, requestId, seen.replyId, ByteBuffer.wrap(seen.reply));
+                    }
+                    return;
+                }
+                ByteBuffer[] holder = replyBuffers.get();
+                byte flags;
+                while (true) {
+                    ByteBuffer reply = holder[0];
+                    reply.clear();
+                    buffer.position(UDPMessage.HEADER_BYTES);
+                    try {
+                        flags = handle(version, opcode, buffer, reply);
+                        break;
+                    } catch (BufferOverflowException e) {
+                        if (reply.capacity() >= MAX_REPLY_BYTES) {
+                            flags = error(reply, "Reply to operation " + opcode + " is larger than "
+                                    + MAX_REPLY_BYTES + " bytes");
+                            break;
+                        }
+                        holder[0] = ByteBuffer.allocate(Math.min(MAX_REPLY_BYTES, 2 * reply.capacity()));
+                    } catch (RuntimeException e) {
+                        // still answer and remember it, or the retransmissions of this request find an entry
+                        // without a reply and are dropped until it ages out
+                        System.out.println("UDP Server failed to handle operation " + opcode + ": " + e);
+                        flags = error(reply, "Operation " + opcode + " failed: " + e);
+                        break;
+                    }
+                }
+                ByteBuffer reply = holder[0];
+                reply.flip();
+                int replyId = nextReplyId.incrementAndGet();
+                recent.finish(key, flags, replyId, reply);
+                send(opcode, flags, requestId, replyId, reply);
+                if (opcode == UDPMessage.COUNT) {
+                    countTimer.stop(start, true);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (opcode == UDPMessage.COUNT) {
+                    countTimer.stop(start, false);
+                }
+                if (stop) {
+                    System.out.println("UDP Server failed to reply: " + e.getMessage());
+                }
+            } finally {
+                buffers.release(buffer);
+            }
+        }
+
+        /*
+         * Sends payload in as many frames as it takes; the request buffer is reused for each of them.
+         */
+        private void send(byte opcode, byte flags, long requestId, int replyId, ByteBuffer payload) throws IOException {
+            int chunks = Math.max(1, (payload.remaining() + UDPMessage.MAX_PAYLOAD_BYTES - 1) / UDPMessage.MAX_PAYLOAD_BYTES);
+            int end = payload.limit();
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                UDPMessage.header(buffer, opcode, flags, chunk, chunks, requestId, replyId);
+                payload.limit(Math.min(end, payload.position() + UDPMessage.MAX_PAYLOAD_BYTES));
+                buffer.put(payload);
+                payload.limit(end);
+                buffer.flip();
+                transport.send(channel, buffer, sender);
+            }
+        }
+    }
+
+    private static final class RequestKey {
+        private final SocketAddress sender;
+        private final long requestId;
+
+        RequestKey(SocketAddress sender, long requestId) {
+            this.sender = sender;
+            this.requestId = requestId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RequestKey)) return false;
+            RequestKey other = (RequestKey) o;
+            return requestId == other.requestId && sender.equals(other.sender);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sender.hashCode() + Long.hashCode(requestId);
+        }
+    }
+
+    /*
+     * Replies of recent requests, oldest first.
+     */
+    private static final class RecentRequests {
+        private final int capacity;
+        private final long maxAgeNanos;
+        private final long maxBytes;
+        private final LinkedHashMap<RequestKey, Seen> requests = new LinkedHashMap<>();
+        // reply bytes kept
+        private long bytes;
+
+        static final class Seen {
+            final long arrivedNanos;
+            // null while the request is being handled
+            volatile byte[] reply;
+            volatile byte flags;
+            volatile int replyId;
+
+            Seen(long arrivedNanos) {
+                this.arrivedNanos = arrivedNanos;
+            }
+        }
+
+        RecentRequests(int capacity, long maxAgeNanos, long maxBytes) {
+            this.capacity = capacity;
+            this.maxAgeNanos = maxAgeNanos;
+            this.maxBytes = maxBytes;
+        }
+
+        /*
+         * Null for a request seen for the first time, which is then marked in progress.
+         */
+        synchronized Seen begin(RequestKey key) {
+            Seen seen = requests.get(key);
+            if (seen != null) return seen;
+            long now = System.nanoTime();
+            evict(now, capacity - 1);
+            if (capacity > 0) {
+                requests.put(key, new Seen(now));
+            }
+            return null;
+        }
+
+        /*
+         * Forgets the oldest requests until at most entries are left, none is too old and the replies fit maxBytes.
+         */
+        private void evict(long now, int entries) {
+            Iterator<Seen> oldest = requests.values().iterator();
+            while (oldest.hasNext()) {
+                Seen entry = oldest.next();
+                if (requests.size() <= entries && bytes <= maxBytes && now - entry.arrivedNanos <= maxAgeNanos) break;
+                if (entry.reply != null) bytes -= entry.reply.length;
+                oldest.remove();
+            }
+        }
+
+        /*
+         * Keeps a copy of the reply payload, between its position and limit, unless it alone exceeds maxBytes.
+         */
+        synchronized void finish(RequestKey key, byte flags, int replyId, ByteBuffer reply) {
+            Seen seen = requests.get(key);
+            if (seen == null) return;
+            if (reply.remaining() > maxBytes) {
+                requests.remove(key);
+                return;
+            }
+            byte[] copy = new byte[reply.remaining()];
+            reply.duplicate().get(copy);
+            seen.flags = flags;
+            seen.replyId = replyId;
+            seen.reply = copy;
+            bytes += copy.length;
+            evict(System.nanoTime(), capacity);
+        }
+    }
+
     public void stopServer(){
-        datagramSocket.close();
         stop = false;
-
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        workers.shutdown();
     }
 }
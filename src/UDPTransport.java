@@ -0,0 +1,17 @@
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/*
+ * How UDPClient and UDPServer put a datagram on the wire. DIRECT sends it through the channel; tests wrap it
+ * to lose datagrams on purpose.
+ */
+public interface UDPTransport {
+    UDPTransport DIRECT = DatagramChannel::send;
+
+    /*
+     * Sends the datagram between buffer's position and limit; returns the bytes sent, as DatagramChannel.send.
+     */
+    int send(DatagramChannel channel, ByteBuffer buffer, SocketAddress target) throws IOException;
+}
@@ -0,0 +1,69 @@
+import Record.Records;
+import Record.TeacherRecord;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CenterJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static class Recorded implements CenterJournal.Replay {
+        final List<String> entries = new ArrayList<>();
+
+        public void create(Records record) {
+            entries.add("create " + record.getRecordID());
+        }
+
+        public void edit(String recordID, String fieldName, String newValue) {
+            entries.add("edit " + recordID + " " + fieldName + "=" + newValue);
+        }
+    }
+
+    @Test
+    public void appendsAfterCloseFail() throws Exception {
+        CenterJournal journal = new CenterJournal(folder.getRoot(), CenterJournal.FsyncPolicy.GROUP);
+        journal.recover(new Recorded());
+        journal.awaitDurable(journal.logCreate(teacher("TR00001"), () -> { }));
+        journal.close();
+        try {
+            journal.logEdit("TR00001", "phone", "5141111111", () -> { });
+            fail("edit logged to a closed journal");
+        } catch (IOException e) {
+            // expected
+        }
+        // entries written before close are durable; waiting for them after close returns
+        journal.awaitDurable(1);
+        journal.close();
+    }
+
+    @Test
+    public void editIsLoggedBeforeItIsApplied() throws Exception {
+        File dir = folder.getRoot();
+        CenterJournal journal = new CenterJournal(dir, CenterJournal.FsyncPolicy.PER_OP);
+        journal.recover(new Recorded());
+        journal.logCreate(teacher("TR00001"), () -> { });
+        List<String> seenByApply = new ArrayList<>();
+        journal.logEdit("TR00001", "phone", "5141111111", () -> {
+            // the edit is already in the log by the time it is applied
+            Recorded replayed = new Recorded();
+            new CenterJournal(dir, CenterJournal.FsyncPolicy.PER_OP).recover(replayed);
+            seenByApply.addAll(replayed.entries);
+        });
+        journal.close();
+        assertEquals(2, seenByApply.size());
+        assertEquals("edit TR00001 phone=5141111111", seenByApply.get(1));
+    }
+
+    private static TeacherRecord teacher(String recordID) {
+        return new TeacherRecord(recordID, "first", "last", "address", "5140000000", "french", "MTL");
+    }
+}
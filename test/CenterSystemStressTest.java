@@ -0,0 +1,146 @@
+import CenterServer.CenterServicePackage.except;
+import Record.Records;
+import Record.StudentRecord;
+import Record.TeacherRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * Many threads creating, editing and counting records of one center at once, with last-name edits moving
+ * records between buckets while other threads walk them. Afterwards every record must be in the index and in
+ * exactly the bucket of its current initial, and the counters must match what was created.
+ */
+public class CenterSystemStressTest {
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 20000;
+
+    private CenterSystem center;
+
+    @Before
+    public void start() throws Exception {
+        System.setProperty("dcms.data.dir", "");
+        int udpPort;
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            udpPort = socket.getLocalPort();
+        }
+        center = new CenterSystem("MTL", udpPort,
+                Collections.singletonMap("MTL", InetSocketAddress.createUnresolved("localhost", udpPort)));
+        center.setShutdownAction(() -> { });
+    }
+
+    @After
+    public void stop() {
+        center.shutdown();
+    }
+
+    @Test
+    public void createEditAndCountConcurrently() throws Exception {
+        Queue<String> teachers = new ConcurrentLinkedQueue<>();
+        Queue<String> students = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < 100; i++) {
+            teachers.add(center.createTRecord("MTL0001", "first", "Teacher", "address", "5140000000", "french", "MTL"));
+            students.add(center.createSRecord("MTL0001", "first", "Student", new String[]{"math"}, "active", "2018-01-01"));
+        }
+        List<String> teacherIDs = new ArrayList<>(teachers);
+        List<String> studentIDs = new ArrayList<>(students);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            workers.add(pool.submit(() -> {
+                go.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int lastCount = 0;
+                for (int i = 0; i < OPERATIONS; i++) {
+                    switch (random.nextInt(6)) {
+                        case 0:
+                            teachers.add(center.createTRecord("MTL0001", "first", lastName(random), "address",
+                                    "5140000000", "french", "MTL"));
+                            break;
+                        case 1:
+                            students.add(center.createSRecord("MTL0001", "first", lastName(random),
+                                    new String[]{"math", "french"}, "active", "2018-01-01"));
+                            break;
+                        case 2:
+                            edit(teacherIDs.get(random.nextInt(teacherIDs.size())), "lastName", lastName(random));
+                            break;
+                        case 3:
+                            if (random.nextBoolean()) {
+                                edit(studentIDs.get(random.nextInt(studentIDs.size())), "lastName", lastName(random));
+                            } else {
+                                edit(studentIDs.get(random.nextInt(studentIDs.size())), "status", "inactive");
+                            }
+                            break;
+                        case 4: {
+                            int count = center.getLocalRecordCount();
+                            assertTrue("count went back from " + lastCount + " to " + count, count >= lastCount);
+                            lastCount = count;
+                            break;
+                        }
+                        default:
+                            for (Records record : center.store.bucket((char) ('A' + random.nextInt(26)))) {
+                                assertNotNull(record.getRecordID());
+                            }
+                    }
+                }
+                return null;
+            }));
+        }
+        go.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        pool.shutdown();
+
+        assertEquals(teachers.size() + students.size(), center.getLocalRecordCount());
+        assertEquals(teachers.size(), center.store.teacherCount());
+        assertEquals(students.size(), center.store.studentCount());
+        assertEquals(center.getLocalRecordCount(), center.store.records().size());
+        for (String recordID : teachers) {
+            assertTrue(recordID, center.store.get(recordID) instanceof TeacherRecord);
+        }
+        for (String recordID : students) {
+            assertTrue(recordID, center.store.get(recordID) instanceof StudentRecord);
+        }
+        int inBuckets = 0;
+        for (char key = 'A'; key <= 'Z'; key++) {
+            for (Records record : center.store.bucket(key)) {
+                assertEquals(record.getRecordID(), key, RecordStore.keyOf(record));
+                inBuckets++;
+            }
+        }
+        assertEquals(center.getLocalRecordCount(), inBuckets);
+    }
+
+    private void edit(String recordID, String fieldName, String newValue) {
+        try {
+            String result = center.editRecord("MTL0001", recordID, fieldName, newValue);
+            assertEquals("The value in " + fieldName + " is changed to " + newValue, result);
+        } catch (except e) {
+            throw new AssertionError(e.reason, e);
+        }
+    }
+
+    private static String lastName(ThreadLocalRandom random) {
+        return (char) ('A' + random.nextInt(26)) + "name";
+    }
+}
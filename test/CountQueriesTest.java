@@ -0,0 +1,122 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/*
+ * Callers asking for a peer's count while a query to it is in flight join that query instead of sending their
+ * own; a reply is shared for ttlMillis after it arrives and a failure for no time at all.
+ */
+public class CountQueriesTest {
+    private final CountQueries queries = new CountQueries();
+    private final AtomicInteger sends = new AtomicInteger();
+    private volatile CompletableFuture<Integer> pending;
+
+    private CompletableFuture<Integer> send() {
+        sends.incrementAndGet();
+        pending = new CompletableFuture<>();
+        return pending;
+    }
+
+    @Test
+    public void concurrentCallersShareOneQuery() throws Exception {
+        int callers = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            CountDownLatch ready = new CountDownLatch(callers);
+            List<Future<CompletableFuture<Integer>>> joined = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                joined.add(executor.submit(() -> {
+                    ready.countDown();
+                    ready.await();
+                    return queries.query("LVL", 0, this::send);
+                }));
+            }
+            List<CompletableFuture<Integer>> replies = new ArrayList<>();
+            for (Future<CompletableFuture<Integer>> future : joined) {
+                replies.add(future.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, sends.get());
+            assertEquals(callers, queries.requested());
+            assertEquals(1, queries.sent());
+            for (CompletableFuture<Integer> reply : replies) {
+                assertFalse(reply.isDone());
+            }
+            pending.complete(7);
+            for (CompletableFuture<Integer> reply : replies) {
+                assertEquals(Integer.valueOf(7), reply.getNow(null));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void peersAreQueriedSeparately() {
+        CompletableFuture<Integer> lvl = queries.query("LVL", 0, this::send);
+        CompletableFuture<Integer> ddo = queries.query("DDO", 0, this::send);
+        assertNotSame(lvl, ddo);
+        assertEquals(2, sends.get());
+    }
+
+    @Test
+    public void repliesAreSharedForTtlMillis() throws Exception {
+        CompletableFuture<Integer> first = queries.query("LVL", 100, this::send);
+        pending.complete(7);
+        assertSame(first, queries.query("LVL", 100, this::send));
+        assertEquals(1, sends.get());
+
+        // without a ttl an answered query is not reused
+        CompletableFuture<Integer> again = queries.query("LVL", 0, this::send);
+        assertNotSame(first, again);
+        assertEquals(2, sends.get());
+        pending.complete(8);
+
+        Thread.sleep(50);
+        assertSame(again, queries.query("LVL", 1000, this::send));
+        assertNotSame(again, queries.query("LVL", 20, this::send));
+        assertEquals(3, sends.get());
+    }
+
+    @Test
+    public void failuresAreForgottenAtOnce() {
+        CompletableFuture<Integer> first = queries.query("LVL", 1000, this::send);
+        CompletableFuture<Integer> joined = queries.query("LVL", 1000, this::send);
+        assertSame(first, joined);
+        pending.completeExceptionally(new IllegalStateException("timed out"));
+        assertTrue(joined.isCompletedExceptionally());
+
+        queries.query("LVL", 1000, this::send);
+        assertEquals(2, sends.get());
+    }
+
+    @Test
+    public void aThrowingSendFailsTheQuery() throws Exception {
+        CompletableFuture<Integer> reply = queries.query("LVL", 1000, () -> {
+            throw new IllegalStateException("no route");
+        });
+        try {
+            reply.get();
+            fail("reply completed");
+        } catch (ExecutionException e) {
+            assertEquals("no route", e.getCause().getMessage());
+        }
+        queries.query("LVL", 1000, this::send);
+        assertEquals(1, sends.get());
+    }
+}
@@ -0,0 +1,53 @@
+import Record.RecordIdAllocator;
+import Record.TeacherRecord;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/*
+ * Cursors coming back from clients: anything past what was allocated is refused, and a page gives up after
+ * MAX_SKIPPED missing IDs instead of walking the whole gap.
+ */
+public class ExportCursorTest {
+    @Test
+    public void refusesCursorsPastTheAllocator() {
+        RecordIdAllocator allocator = new RecordIdAllocator();
+        for (int i = 0; i < 3; i++) {
+            allocator.nextTeacherId();
+        }
+        allocator.nextStudentId();
+        assertEquals("3.1.4", ExportCursor.open("3.1.4", allocator).toString());
+        for (String text : new String[]{"9000000000000000000.0.0", "3.2.0", "3.1.5", "3.1.-1", "-1.1.0", "3.1", "a.b.c"}) {
+            try {
+                ExportCursor.open(text, allocator);
+                fail(text + " accepted");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void stopsAfterTooManyMissingIDs() {
+        RecordIdAllocator allocator = new RecordIdAllocator();
+        RecordStore store = new RecordStore();
+        // allocated but never stored, then one record past the gap
+        for (int i = 0; i < ExportCursor.MAX_SKIPPED + 10; i++) {
+            allocator.nextTeacherId();
+        }
+        store.add(new TeacherRecord(allocator.nextTeacherId(), "first", "Last", "address", "5140000000", "french", "MTL"));
+
+        ExportCursor cursor = ExportCursor.open("", allocator);
+        assertNull(cursor.next(store));
+        assertFalse(cursor.atEnd());
+        cursor = ExportCursor.open(cursor.toString(), allocator);
+        assertNotNull(cursor.next(store));
+        assertNull(cursor.next(store));
+        assertTrue(cursor.atEnd());
+    }
+}
@@ -0,0 +1,39 @@
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+
+/*
+ * Sends through the channel but loses a share of the datagrams on the way, as a lossy network would.
+ * Seeded, so a run loses the same datagrams every time as long as they are sent in the same order.
+ */
+public class LossyTransport implements UDPTransport {
+    private final Random random;
+    private volatile double lossRate;
+    private int lost;
+
+    public LossyTransport(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public void setLossRate(double lossRate) {
+        this.lossRate = lossRate;
+    }
+
+    public synchronized int lost() {
+        return lost;
+    }
+
+    @Override
+    public synchronized int send(DatagramChannel channel, ByteBuffer buffer, SocketAddress target) throws IOException {
+        if (random.nextDouble() < lossRate) {
+            lost++;
+            // gone without a trace, as far as the sender can tell
+            int bytes = buffer.remaining();
+            buffer.position(buffer.limit());
+            return bytes;
+        }
+        return channel.send(buffer, target);
+    }
+}
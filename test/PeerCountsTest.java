@@ -0,0 +1,75 @@
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/*
+ * Digests as a peer sees them arrive: a pushed count is used only while it is younger than maxStalenessMillis,
+ * then only as the last known count; reordered digests of one boot don't roll it back, a restarted sender's
+ * do count, and digests of unknown or garbled senders are ignored.
+ */
+public class PeerCountsTest {
+    private final PeerCounts counts = new PeerCounts("MTL",
+            Collections.singletonMap("LVL", InetSocketAddress.createUnresolved("localhost", 1)), () -> 0);
+
+    @Test
+    public void pushedCountsGoStale() throws Exception {
+        assertNull(counts.count("LVL", 1000));
+        assertEquals("LVL", counts.receive(digest("LVL", 7, 1, 1)));
+        assertEquals(Integer.valueOf(7), counts.count("LVL", 1000));
+        assertEquals(1000, counts.pushMillis("LVL"));
+
+        Thread.sleep(50);
+        assertNull(counts.count("LVL", 20));
+        assertEquals(Integer.valueOf(7), counts.count("LVL", 1000));
+        assertEquals(Integer.valueOf(7), counts.lastKnown("LVL"));
+
+        // a fresh digest makes the count current again
+        counts.receive(digest("LVL", 8, 1, 2));
+        assertEquals(Integer.valueOf(8), counts.count("LVL", 20));
+    }
+
+    @Test
+    public void olderDigestsOfOneBootAreIgnored() {
+        counts.receive(digest("LVL", 8, 1, 5));
+        counts.receive(digest("LVL", 7, 1, 4));
+        counts.receive(digest("LVL", 6, 1, 5));
+        assertEquals(Integer.valueOf(8), counts.count("LVL", 1000));
+        assertEquals(Integer.valueOf(8), counts.lastKnown("LVL"));
+
+        // after a restart the sequence starts over
+        counts.receive(digest("LVL", 3, 2, 1));
+        assertEquals(Integer.valueOf(3), counts.count("LVL", 1000));
+    }
+
+    @Test
+    public void answersOnlyUpdateTheLastKnownCount() {
+        counts.answered("LVL", 5);
+        assertNull(counts.count("LVL", 1000));
+        assertEquals(Integer.valueOf(5), counts.lastKnown("LVL"));
+        counts.answered("DDO", 5);
+        assertNull(counts.lastKnown("DDO"));
+    }
+
+    @Test
+    public void unknownAndTruncatedDigestsAreIgnored() {
+        assertNull(counts.receive(digest("DDO", 7, 1, 1)));
+        assertNull(counts.lastKnown("DDO"));
+        ByteBuffer truncated = digest("LVL", 7, 1, 1);
+        truncated.limit(truncated.limit() - 4);
+        assertNull(counts.receive(truncated));
+        assertNull(counts.lastKnown("LVL"));
+    }
+
+    private static ByteBuffer digest(String center, int records, long boot, long sequence) {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        UDPMessage.putString(buffer, center);
+        buffer.putInt(records).putLong(boot).putLong(sequence).putLong(1000);
+        buffer.flip();
+        return buffer;
+    }
+}
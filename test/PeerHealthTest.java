@@ -0,0 +1,106 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * The failure detector suspects a peer whose digests stop well past their usual interval and clears it on the
+ * next one; the breaker opens after breakerFailures failed calls, lets one trial through after
+ * breakerOpenMillis, and closes or reopens on its outcome, or reopens when the trial never reports.
+ */
+public class PeerHealthTest {
+    @Before
+    public void configure() {
+        System.setProperty("dcms.peers.minStdDevMillis", "10");
+        System.setProperty("dcms.peers.breakerFailures", "3");
+        System.setProperty("dcms.peers.breakerOpenMillis", "100");
+        System.setProperty("dcms.peers.trialTimeoutMillis", "200");
+    }
+
+    @After
+    public void reset() {
+        for (String name : new String[]{"dcms.peers.phiThreshold", "dcms.peers.minStdDevMillis",
+                "dcms.peers.breakerFailures", "dcms.peers.breakerOpenMillis", "dcms.peers.trialTimeoutMillis"}) {
+            System.clearProperty(name);
+        }
+    }
+
+    @Test
+    public void suspectsPeersWhoseDigestsStop() throws Exception {
+        PeerHealth health = new PeerHealth("MTL", Collections.singletonList("LVL"));
+        // no digest yet: nothing to judge by
+        assertFalse(health.suspected("LVL"));
+
+        health.heartbeat("LVL", 50);
+        assertFalse(health.suspected("LVL"));
+        assertTrue(health.allow("LVL"));
+
+        // mean 50 ms, deviation 10 ms: phi passes 8 a little over 100 ms after the digest
+        Thread.sleep(300);
+        assertTrue(health.suspected("LVL"));
+        assertFalse(health.allow("LVL"));
+
+        health.heartbeat("LVL", 50);
+        assertFalse(health.suspected("LVL"));
+        assertTrue(health.allow("LVL"));
+    }
+
+    @Test
+    public void infiniteThresholdTurnsTheDetectorOff() throws Exception {
+        System.setProperty("dcms.peers.phiThreshold", "Infinity");
+        PeerHealth health = new PeerHealth("MTL", Collections.singletonList("LVL"));
+        health.heartbeat("LVL", 10);
+        Thread.sleep(300);
+        assertFalse(health.suspected("LVL"));
+        assertTrue(health.allow("LVL"));
+    }
+
+    @Test
+    public void breakerOpensAndClosesThroughATrial() throws Exception {
+        PeerHealth health = new PeerHealth("MTL", Collections.singletonList("LVL"));
+        health.completed("LVL", new TimeoutException());
+        health.completed("LVL", new TimeoutException());
+        assertTrue(health.allow("LVL"));
+        // an error reply means the peer is alive and starts the count over
+        health.completed("LVL", new UDPClient.PeerError("no such record"));
+        health.completed("LVL", new TimeoutException());
+        health.completed("LVL", new TimeoutException());
+        assertTrue(health.allow("LVL"));
+        health.completed("LVL", new TimeoutException());
+        assertFalse(health.allow("LVL"));
+
+        // half open: one trial, the others still fail fast; a failed trial opens it again
+        Thread.sleep(150);
+        assertTrue(health.allow("LVL"));
+        assertFalse(health.allow("LVL"));
+        health.completed("LVL", new TimeoutException());
+        assertFalse(health.allow("LVL"));
+
+        // a successful trial closes it
+        Thread.sleep(150);
+        assertTrue(health.allow("LVL"));
+        health.completed("LVL", null);
+        assertTrue(health.allow("LVL"));
+        assertTrue(health.allow("LVL"));
+    }
+
+    @Test
+    public void lostTrialsReopenTheBreaker() throws Exception {
+        PeerHealth health = new PeerHealth("MTL", Collections.singletonList("LVL"));
+        for (int i = 0; i < 3; i++) {
+            health.completed("LVL", new TimeoutException());
+        }
+        Thread.sleep(150);
+        assertTrue(health.allow("LVL"));
+        // the trial never reports; after trialTimeoutMillis the breaker counts it failed and opens again
+        Thread.sleep(250);
+        assertFalse(health.allow("LVL"));
+        Thread.sleep(150);
+        assertTrue(health.allow("LVL"));
+    }
+}
@@ -0,0 +1,105 @@
+import CenterServer.RecordInfo;
+import CenterServer.RecordPage;
+import Record.Records;
+import Record.StudentRecord;
+import Record.TeacherRecord;
+import org.junit.Test;
+
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * Secondary indexes follow edits of an indexed field: the record leaves the entry of its old value and joins
+ * the one of its new value, and findRecords pages through the matches in ID order without skipping or
+ * repeating any, also when a match is edited away between two pages.
+ */
+public class RecordStoreTest {
+    @Test
+    public void editsMoveRecordsBetweenIndexEntries() throws Exception {
+        RecordStore store = new RecordStore();
+        StudentRecord student = new StudentRecord("SR00001", "first", "Last", new String[]{"math", "french"},
+                "active", "2018-01-01");
+        TeacherRecord teacher = new TeacherRecord("TR00001", "first", "Last", "address", "5140000000", "french", "MTL");
+        store.add(student);
+        store.add(teacher);
+
+        store.update(student, "status", () -> student.setStatus("inactive"));
+        assertEquals(Collections.emptyList(), ids(store.find("status", "active", "", 10)));
+        assertEquals(Collections.singletonList("SR00001"), ids(store.find("status", "inactive", "", 10)));
+
+        // a multi-valued field keeps the values that stay and swaps the others
+        store.update(student, "coursesRegistered",
+                () -> student.setCoursesRegistered(new ArrayList<>(Arrays.asList("french", "history"))));
+        assertEquals(Collections.emptyList(), ids(store.find("coursesRegistered", "math", "", 10)));
+        assertEquals(Collections.singletonList("SR00001"), ids(store.find("coursesRegistered", "french", "", 10)));
+        assertEquals(Collections.singletonList("SR00001"), ids(store.find("coursesRegistered", "history", "", 10)));
+
+        store.update(teacher, "location", () -> teacher.setLocation("LVL"));
+        assertEquals(Collections.emptyList(), ids(store.find("location", "MTL", "", 10)));
+        assertEquals(Collections.singletonList("TR00001"), ids(store.find("location", "LVL", "", 10)));
+
+        // editing a field that isn't indexed leaves the indexes alone
+        store.update(teacher, "phone", () -> teacher.setPhone("5149999999"));
+        assertEquals(Collections.singletonList("TR00001"), ids(store.find("location", "LVL", "", 10)));
+    }
+
+    @Test
+    public void findRecordsPagesInIdOrder() throws Exception {
+        System.setProperty("dcms.data.dir", "");
+        int udpPort;
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            udpPort = socket.getLocalPort();
+        }
+        CenterSystem center = new CenterSystem("MTL", udpPort,
+                Collections.singletonMap("MTL", InetSocketAddress.createUnresolved("localhost", udpPort)));
+        center.setShutdownAction(() -> { });
+        try {
+            List<String> created = new ArrayList<>();
+            List<String> active = new ArrayList<>();
+            for (int i = 0; i < 25; i++) {
+                String recordID = center.createSRecord("MTL0001", "first", "Last", new String[]{"math"},
+                        i % 5 == 0 ? "inactive" : "active", "2018-01-01");
+                created.add(recordID);
+                if (i % 5 != 0) active.add(recordID);
+            }
+
+            RecordPage page = center.findRecords("MTL0001", "status", "active", "", 7);
+            List<String> found = new ArrayList<>(ids(page));
+            // after the first page the last match stops matching and the first record, behind the cursor,
+            // starts to; neither shows up on the later pages
+            center.editRecord("MTL0001", active.remove(active.size() - 1), "status", "inactive");
+            center.editRecord("MTL0001", created.get(0), "status", "active");
+            while (!page.nextCursor.isEmpty()) {
+                page = center.findRecords("MTL0001", "status", "active", page.nextCursor, 7);
+                assertTrue(page.records.length <= 7);
+                found.addAll(ids(page));
+            }
+            assertEquals(active, found);
+        } finally {
+            center.shutdown();
+        }
+    }
+
+    private static List<String> ids(List<Records> records) {
+        List<String> ids = new ArrayList<>();
+        for (Records record : records) {
+            ids.add(record.getRecordID());
+        }
+        return ids;
+    }
+
+    private static List<String> ids(RecordPage page) {
+        List<String> ids = new ArrayList<>();
+        for (RecordInfo info : page.records) {
+            ids.add(info.recordID);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,51 @@
+import Record.Records;
+import Record.StudentRecord;
+import Record.TeacherRecord;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SnapshotFileTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsComeBackInOrder() throws Exception {
+        List<Records> records = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            records.add(new TeacherRecord(String.format("TR%05d", i), "first", "last" + i, "address", "514",
+                    "french", "MTL"));
+            records.add(new StudentRecord(String.format("SR%05d", i), "first", "Lévesque", new String[]{"math", "art"},
+                    "active", "2018-01-01"));
+        }
+        File file = folder.newFile("snapshot");
+        SnapshotFile.write(file, 7, records);
+
+        List<Records> read = new ArrayList<>();
+        assertEquals(7, SnapshotFile.read(file, read::add));
+        assertEquals(records.size(), read.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(records.get(i).getRecordID(), read.get(i).getRecordID());
+            assertEquals(records.get(i).getLastName(), read.get(i).getLastName());
+        }
+        StudentRecord student = (StudentRecord) read.get(1);
+        assertEquals(Arrays.asList("math", "art"), student.getCoursesRegistered());
+        assertEquals("2018-01-01", student.getStatusDate());
+    }
+
+    @Test
+    public void fileEndsWithTheLastValue() throws Exception {
+        File file = folder.newFile("snapshot");
+        SnapshotFile.write(file, 1, new ArrayList<>());
+        // header only: magic, version, generation, record count, string count, string table offset
+        assertEquals(32, file.length());
+        assertEquals(1, SnapshotFile.read(file, record -> { }));
+    }
+}
@@ -0,0 +1,113 @@
+import CenterServer.RecordInfo;
+import CenterServer.RecordPage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * Peer queries over a network that loses 1 to 10% of the datagrams each way: retransmission and the server's
+ * reply cache must get all but the odd query answered, and every answer must be right, chunked ones included.
+ */
+public class UDPLossTest {
+    private static final int QUERIES = 300;
+
+    private CenterSystem center;
+    private UDPServer server;
+    private InetSocketAddress address;
+    private final LossyTransport clientTransport = new LossyTransport(1);
+    private final LossyTransport serverTransport = new LossyTransport(2);
+
+    @Before
+    public void start() throws Exception {
+        System.setProperty("dcms.data.dir", "");
+        int centerPort;
+        int serverPort;
+        try (DatagramSocket first = new DatagramSocket(0); DatagramSocket second = new DatagramSocket(0)) {
+            centerPort = first.getLocalPort();
+            serverPort = second.getLocalPort();
+        }
+        center = new CenterSystem("MTL", centerPort,
+                Collections.singletonMap("MTL", InetSocketAddress.createUnresolved("localhost", centerPort)));
+        center.setShutdownAction(() -> { });
+        for (int i = 0; i < 10; i++) {
+            center.createTRecord("MTL0001", "first", "Teacher", "address", "5140000000", "french", "MTL");
+        }
+        // a second server for the same center, sending its replies through the lossy transport
+        server = new UDPServer(serverPort, center, 1, 64, serverTransport);
+        new Thread(server).start();
+        address = new InetSocketAddress("localhost", serverPort);
+    }
+
+    @After
+    public void stop() {
+        server.stopServer();
+        center.shutdown();
+    }
+
+    @Test
+    public void countsGetThroughLoss() throws Exception {
+        UDPClient client = new UDPClient(clientTransport);
+        // lossless until the server is listening
+        assertEquals(10, (int) client.count(address, UDPMessage.ALL, 5000).get());
+        for (double lossRate : new double[]{0.01, 0.05, 0.10}) {
+            clientTransport.setLossRate(lossRate);
+            serverTransport.setLossRate(lossRate);
+            int lostBefore = clientTransport.lost() + serverTransport.lost();
+            int failed = 0;
+            for (int i = 0; i < QUERIES; i++) {
+                try {
+                    assertEquals(10, (int) client.count(address, UDPMessage.ALL, 10000).get());
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause().toString(), e.getCause() instanceof TimeoutException);
+                    failed++;
+                }
+            }
+            assertTrue("nothing lost at " + lossRate, clientTransport.lost() + serverTransport.lost() > lostBefore);
+            // one attempt in five fails at 10% each way; all of a query's attempts failing is rare
+            assertTrue(failed + " of " + QUERIES + " queries failed at " + lossRate, failed <= QUERIES / 100);
+        }
+    }
+
+    @Test
+    public void chunkedPagesGetThroughLoss() throws Exception {
+        for (int i = 0; i < 490; i++) {
+            center.createSRecord("MTL0001", "first", "Student", new String[]{"math", "french"}, "active", "2018-01-01");
+        }
+        UDPClient client = new UDPClient(clientTransport);
+        // 500 records, about five chunks
+        RecordPage expected = client.export(address, "", 500, 5000).get();
+        clientTransport.setLossRate(0.10);
+        serverTransport.setLossRate(0.10);
+        int failed = 0;
+        for (int i = 0; i < QUERIES / 10; i++) {
+            try {
+                RecordPage page = client.export(address, "", 500, 10000).get();
+                assertEquals(expected.nextCursor, page.nextCursor);
+                assertEquals(recordIDs(expected), recordIDs(page));
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause().toString(), e.getCause() instanceof TimeoutException);
+                failed++;
+            }
+        }
+        assertTrue(failed + " of " + QUERIES / 10 + " pages failed", failed <= QUERIES / 100);
+    }
+
+    private static List<String> recordIDs(RecordPage page) {
+        List<String> recordIDs = new ArrayList<>();
+        for (RecordInfo record : page.records) {
+            recordIDs.add(record.center + "/" + record.recordID + "/" + record.lastName);
+        }
+        return recordIDs;
+    }
+}